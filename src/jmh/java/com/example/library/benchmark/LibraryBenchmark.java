@@ -0,0 +1,168 @@
+package com.example.library.benchmark;
+
+import com.example.library.api.BookRequest;
+import com.example.library.api.IssueRequest;
+import com.example.library.api.ReaderRequest;
+import com.example.library.model.Book;
+import com.example.library.model.Issue;
+import com.example.library.service.BookService;
+import com.example.library.service.IssueService;
+import com.example.library.service.KeysetPage;
+import com.example.library.service.ReaderService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки горячих путей сервисов.
+ * <p>
+ * Запуск: mvn -Pjmh test-compile exec:exec -Djmh.args="-p issues=1000,100000,10000000 -t 4 -rf json -rff target/jmh-result.json"
+ * <p>
+ * Для таблиц от нескольких миллионов выдач нужна большая куча: -jvmArgsAppend -Xmx8g
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LibraryBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * Собственные читатель и книга потока, чтобы потоки не упирались в лимит и занятость книг друг друга
+     */
+    @State(Scope.Thread)
+    public static class Loan {
+
+        IssueService issueService;
+        IssueRequest request;
+        Issue open;
+
+        @Setup(Level.Trial)
+        public void setup(LibraryState library) {
+            issueService = library.bean(IssueService.class);
+            ReaderRequest reader = new ReaderRequest();
+            reader.setName(library.uniqueName("Читатель бенчмарка"));
+            BookRequest book = new BookRequest();
+            book.setName(library.uniqueName("Книга бенчмарка"));
+            request = new IssueRequest();
+            request.setReaderId(library.bean(ReaderService.class).addNewReader(reader).getId());
+            request.setBookId(library.bean(BookService.class).addNewBook(book).getId());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            returnOpen();
+        }
+
+        void returnOpen() {
+            if (open != null) {
+                issueService.returnBook(open.getId());
+                open = null;
+            }
+        }
+    }
+
+    /**
+     * Перед каждым вызовом issue книга потока возвращается, вне замера
+     */
+    @State(Scope.Thread)
+    public static class IssueLoan extends Loan {
+
+        @Setup(Level.Invocation)
+        public void returnPrevious() {
+            returnOpen();
+        }
+    }
+
+    /**
+     * Перед каждым вызовом returnBook книга потока выдаётся, вне замера
+     */
+    @State(Scope.Thread)
+    public static class ReturnLoan extends Loan {
+
+        @Setup(Level.Invocation)
+        public void issueNext() {
+            open = issueService.issue(request);
+        }
+    }
+
+    /**
+     * Масштабирование по потокам не измерено: прогоны были только на одноядерной машине, где больше одного
+     * потока ничего не показывает. Для кривой - отдельные прогоны с -t 1, -t 2, -t 4 и -t 8 на машине
+     * не меньше чем с 8 ядрами
+     */
+    @Benchmark
+    public Issue issue(IssueLoan loan) {
+        loan.open = loan.issueService.issue(loan.request);
+        return loan.open;
+    }
+
+    @Benchmark
+    public Issue returnBook(ReturnLoan loan) {
+        Issue returned = loan.issueService.returnBook(loan.open.getId());
+        loan.open = null;
+        return returned;
+    }
+
+    @Benchmark
+    public KeysetPage<Issue> getReaderIssues(LibraryState library) {
+        long[] readers = library.readersWithIssues;
+        long readerId = readers[ThreadLocalRandom.current().nextInt(readers.length)];
+        return library.bean(IssueService.class).getReaderIssues(readerId, null, null);
+    }
+
+    @Benchmark
+    public Book addNewBook(LibraryState library) {
+        BookRequest request = new BookRequest();
+        request.setName(library.uniqueName("Новая книга"));
+        return library.bean(BookService.class).addNewBook(request);
+    }
+
+    /**
+     * GET /book/search: полное слово и префикс номера синтетического названия "Книга N"
+     */
+    @Benchmark
+    public List<Book> searchBooks(LibraryState library) {
+        long id = 1 + ThreadLocalRandom.current().nextLong(library.books);
+        String number = String.valueOf(id);
+        return library.bean(BookService.class).searchBooks("книга " + number.substring(0, (number.length() + 1) / 2),
+                null);
+    }
+
+    /**
+     * Страница GET /book: выборка и сериализация в JSON тем же ObjectMapper, что и у контроллеров
+     */
+    @Benchmark
+    public byte[] listBooksJson(LibraryState library) throws JsonProcessingException {
+        long after = ThreadLocalRandom.current().nextLong(Math.max(1, library.books - PAGE_SIZE));
+        return library.bean(ObjectMapper.class)
+                .writeValueAsBytes(library.bean(BookService.class).showBooks(after, PAGE_SIZE).items());
+    }
+
+    /**
+     * Страница GET /issue: выборка и сериализация в JSON
+     */
+    @Benchmark
+    public byte[] listIssuesJson(LibraryState library) throws JsonProcessingException {
+        long after = ThreadLocalRandom.current().nextLong(Math.max(1, library.issues - PAGE_SIZE));
+        return library.bean(ObjectMapper.class)
+                .writeValueAsBytes(library.bean(IssueService.class).showIssues(after, PAGE_SIZE).items());
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.library.benchmark;
+
+import com.example.library.Application;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Контекст приложения для бенчмарков: поднимается один раз на прогон (без веб-сервера)
+ * и заполняется при старте синтетическими данными TestDataGenerator
+ */
+@State(Scope.Benchmark)
+public class LibraryState {
+
+    /**
+     * Размер истории выдач, см. TestDataGenerator.Settings.scaled
+     */
+    @Param({"1000"})
+    public int issues;
+
+    ConfigurableApplicationContext context;
+    long books;
+    long[] readersWithIssues;
+
+    private final AtomicLong names = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.main.banner-mode=off",
+                        "--logging.level.root=warn",
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "--application.test-data.enabled=true",
+                        "--application.test-data.issues=" + issues);
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        books = jdbc.queryForObject("select max(id) from books", Long.class);
+        readersWithIssues = jdbc.queryForList(
+                        "select reader_id from issues union select reader_id from issue_history", Long.class)
+                .stream().mapToLong(Long::longValue).toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    /**
+     * Уникальное имя для новых книг и читателей, создаваемых во время прогона
+     */
+    String uniqueName(String prefix) {
+        return prefix + " " + names.incrementAndGet();
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.library;
+
+import com.example.library.api.IssueHandler;
+import com.zaxxer.hikari.HikariDataSource;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.web.reactive.config.BlockingExecutionConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import java.time.Duration;
+
+/**
+ * Профиль reactive: WebFlux на Netty с небольшим фиксированным числом потоков вместо Tomcat.
+ * <ul>
+ *     <li>API выдач (/issue) обрабатывается {@link IssueHandler} с доступом к БД через R2DBC</li>
+ *     <li>остальные контроллеры блокирующие и выполняются на applicationTaskExecutor, не занимая потоки Netty</li>
+ *     <li>JPA продолжает работать через JDBC: пул JDBC объявлен явно, потому что при наличии ConnectionFactory
+ *     автоконфигурация DataSource отключается. Оба пула подключены к одной БД</li>
+ * </ul>
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("reactive")
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class ReactiveConfig implements WebFluxConfigurer {
+
+    private final AsyncTaskExecutor applicationTaskExecutor;
+
+    public ReactiveConfig(@Qualifier("applicationTaskExecutor") AsyncTaskExecutor applicationTaskExecutor) {
+        this.applicationTaskExecutor = applicationTaskExecutor;
+    }
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * Учётные данные те же, что у JDBC (spring.datasource.*)
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionPool connectionFactory(DataSourceProperties properties,
+                                            @Value("${application.reactive.r2dbc-url}") String url,
+                                            @Value("${application.reactive.pool-size:10}") int poolSize) {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, properties.determineUsername())
+                .option(ConnectionFactoryOptions.PASSWORD, properties.determinePassword())
+                .build();
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+                .initialSize(poolSize)
+                .maxSize(poolSize)
+                .maxAcquireTime(Duration.ofSeconds(5))
+                .build());
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> issueRoutes(IssueHandler handler) {
+        return RouterFunctions.route()
+                .path("/issue", builder -> builder
+                        .POST("", handler::issueBook)
+                        .GET("", handler::getAllIssues)
+                        .GET("/export", handler::exportIssues)
+                        .GET("/overdue", handler::getOverdueIssues)
+                        .GET("/{id}", handler::getIssueInfo)
+                        .PUT("/{issueId}", handler::returnBook))
+                .build();
+    }
+
+    @Override
+    public void configureBlockingExecution(BlockingExecutionConfigurer configurer) {
+        configurer.setExecutor(applicationTaskExecutor);
+    }
+}
@@ -1,4 +1,316 @@
 package com.example.library;
 
+import com.example.library.eventlog.JdbcRowSink;
+import com.example.library.eventlog.RowSink;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+/**
+ * Генератор синтетических данных библиотеки: книги, читатели и история выдач.
+ * <p>
+ * При одинаковых настройках (и seed) генерирует одни и те же данные, со сдвигом только во времени
+ * (даты отсчитываются от момента генерации):
+ * <ul>
+ *     <li>популярность книг и активность читателей распределены по Зипфу, самые популярные книги
+ *     разбросаны по диапазону id, а не собраны в его начале</li>
+ *     <li>выдачи равномерно распределены по истории, срок на руках - логнормальный с медианой 14 дней;
+ *     выдачи, срок которых ещё не истёк, остаются открытыми, если книга свободна и лимит читателя не превышен</li>
+ *     <li>доля читателей добирается до лимита книг на руках свежими выдачами</li>
+ * </ul>
+ * Данные загружаются в БД пакетами JDBC ({@link #load(DataSource)}) или выгружаются в CSV
+ * ({@link #exportCsv(Path)}), которые H2 загружает одним запросом ({@link #loadCsv(DataSource, Path)})
+ */
+@Slf4j
 public class TestDataGenerator {
+
+    private static final double MEDIAN_LOAN_DAYS = 14;
+    private static final double LOAN_DAYS_SIGMA = 0.6;
+    private static final int FREE_BOOK_ATTEMPTS = 100;
+
+    /**
+     * @param bookPopularity      показатель распределения Зипфа для выбора книги
+     * @param readerActivity      показатель распределения Зипфа для выбора читателя
+     * @param readersAtLimitShare доля читателей, у которых на руках booksLimit книг
+     */
+    public record Settings(long seed, int books, int readers, long issues, int booksLimit,
+                           double bookPopularity, double readerActivity, double readersAtLimitShare,
+                           Duration history) {
+
+        /**
+         * Настройки по размеру истории выдач: книг в 10 раз меньше, читателей в 20 раз меньше
+         */
+        public static Settings scaled(long issues, long seed, int booksLimit) {
+            return new Settings(seed,
+                    (int) Math.max(100, issues / 10),
+                    (int) Math.max(50, issues / 20),
+                    issues, booksLimit, 1.0, 0.6, 0.05, Duration.ofDays(365));
+        }
+    }
+
+    private final Settings settings;
+
+    public TestDataGenerator(Settings settings) {
+        if (settings.books() < 1 || settings.readers() < 1 || settings.issues() < 0) {
+            throw new IllegalArgumentException("Некорректные настройки генерации: " + settings);
+        }
+        this.settings = settings;
+    }
+
+    /**
+     * @return количество сгенерированных выдач (история плюс добор читателей до лимита)
+     */
+    public long generate(RowSink sink) {
+        SplittableRandom random = new SplittableRandom(settings.seed());
+        LocalDateTime now = LocalDateTime.now();
+        int books = settings.books();
+        int readers = settings.readers();
+
+        for (long id = 1; id <= books; id++) {
+            sink.book(id, "Книга " + id);
+        }
+        for (long id = 1; id <= readers; id++) {
+            sink.reader(id, "Читатель " + id);
+        }
+
+        Zipf bookRanks = new Zipf(books, settings.bookPopularity());
+        Zipf readerRanks = new Zipf(readers, settings.readerActivity());
+        Permutation bookIds = new Permutation(books);
+        Permutation readerIds = new Permutation(readers);
+        BitSet bookOpen = new BitSet(books + 1);
+        int[] readerOpen = new int[readers + 1];
+        long historyMinutes = settings.history().toMinutes();
+        long id = 0;
+
+        for (long i = 0; i < settings.issues(); i++) {
+            long bookId = bookIds.apply(bookRanks.sample(random));
+            long readerId = readerIds.apply(readerRanks.sample(random));
+            long issuedMinutesAgo = historyMinutes - historyMinutes * (i + 1) / settings.issues();
+            long loanMinutes = loanMinutes(random);
+            LocalDateTime issuedAt = now.minusMinutes(issuedMinutesAgo);
+            LocalDateTime returnedAt;
+            if (loanMinutes < issuedMinutesAgo) {
+                returnedAt = issuedAt.plusMinutes(loanMinutes);
+            } else if (!bookOpen.get((int) bookId) && readerOpen[(int) readerId] < settings.booksLimit()) {
+                bookOpen.set((int) bookId);
+                readerOpen[(int) readerId]++;
+                returnedAt = null;
+            } else {
+                // книга уже на руках или лимит читателя исчерпан - выдача закрыта раньше срока
+                returnedAt = issuedAt.plusMinutes((long) (issuedMinutesAgo * random.nextDouble()));
+            }
+            sink.issue(++id, bookId, readerId, issuedAt, returnedAt);
+        }
+
+        long atLimit = Math.round(readers * settings.readersAtLimitShare());
+        for (int rank = 1; rank <= atLimit; rank++) {
+            long readerId = readerIds.apply(rank);
+            while (readerOpen[(int) readerId] < settings.booksLimit()) {
+                long bookId = freeBook(random, bookOpen, books);
+                if (bookId < 0) {
+                    break;
+                }
+                bookOpen.set((int) bookId);
+                readerOpen[(int) readerId]++;
+                long issuedMinutesAgo = random.nextLong(Math.max(1, (long) (MEDIAN_LOAN_DAYS * 24 * 60)));
+                sink.issue(++id, bookId, readerId, now.minusMinutes(issuedMinutesAgo), null);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Загрузка в таблицы books, readers, issues и issue_history пакетами JDBC, с фиксацией после каждого пакета.
+     * Таблицы должны быть пустыми, а загрузка - выполнена до первой записи через приложение
+     */
+    public void load(DataSource dataSource) {
+        long start = System.nanoTime();
+        try (Connection connection = dataSource.getConnection();
+             JdbcRowSink sink = new JdbcRowSink(connection)) {
+            long issues = generate(sink);
+            sink.flush();
+            log.info("Сгенерировано книг {}, читателей {}, выдач {} за {} мс",
+                    settings.books(), settings.readers(), issues, (System.nanoTime() - start) / 1_000_000);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Не удалось загрузить тестовые данные", e);
+        }
+    }
+
+    /**
+     * Выгрузка в books.csv, readers.csv и issues.csv в указанном каталоге
+     */
+    public void exportCsv(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            try (BufferedWriter books = csv(directory.resolve("books.csv"), "ID,NAME");
+                 BufferedWriter readers = csv(directory.resolve("readers.csv"), "ID,NAME");
+                 BufferedWriter issues = csv(directory.resolve("issues.csv"), "ID,BOOK_ID,READER_ID,ISSUED_AT,RETURNED_AT")) {
+                generate(new RowSink() {
+                    @Override
+                    public void book(long id, String name) {
+                        write(books, id + "," + name);
+                    }
+
+                    @Override
+                    public void reader(long id, String name) {
+                        write(readers, id + "," + name);
+                    }
+
+                    @Override
+                    public void issue(long id, long bookId, long readerId, LocalDateTime issuedAt, LocalDateTime returnedAt) {
+                        write(issues, id + "," + bookId + "," + readerId + "," + Timestamp.valueOf(issuedAt) + ","
+                                + (returnedAt == null ? "" : Timestamp.valueOf(returnedAt)));
+                    }
+                });
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Загрузка файлов, выгруженных {@link #exportCsv(Path)}, средствами H2 (CSVREAD)
+     */
+    public static void loadCsv(DataSource dataSource, Path directory) {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("insert into books (id, name) select * from csvread('"
+                    + directory.resolve("books.csv") + "', null, 'charset=UTF-8')");
+            statement.execute("insert into readers (id, name) select * from csvread('"
+                    + directory.resolve("readers.csv") + "', null, 'charset=UTF-8')");
+            String issues = "select * from csvread('" + directory.resolve("issues.csv") + "', null, 'charset=UTF-8 null=')";
+            statement.execute("insert into issues (id, book_id, reader_id, issued_at) "
+                    + "select id, book_id, reader_id, issued_at from (" + issues + ") where returned_at is null");
+            statement.execute("insert into issue_history (id, book_id, reader_id, issued_at, returned_at) "
+                    + "select * from (" + issues + ") where returned_at is not null");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Не удалось загрузить тестовые данные из " + directory, e);
+        }
+    }
+
+    private long loanMinutes(SplittableRandom random) {
+        double days = MEDIAN_LOAN_DAYS * Math.exp(LOAN_DAYS_SIGMA * random.nextGaussian());
+        return Math.max(1, (long) (days * 24 * 60));
+    }
+
+    private static long freeBook(SplittableRandom random, BitSet bookOpen, int books) {
+        for (int attempt = 0; attempt < FREE_BOOK_ATTEMPTS; attempt++) {
+            int bookId = 1 + random.nextInt(books);
+            if (!bookOpen.get(bookId)) {
+                return bookId;
+            }
+        }
+        int bookId = bookOpen.nextClearBit(1);
+        return bookId <= books ? bookId : -1;
+    }
+
+    private static BufferedWriter csv(Path file, String header) throws IOException {
+        BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        writer.write(header);
+        writer.newLine();
+        return writer;
+    }
+
+    private static void write(BufferedWriter writer, String line) {
+        try {
+            writer.write(line);
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Биекция рангов 1..n на id 1..n умножением на взаимно простое с n число
+     */
+    private static final class Permutation {
+
+        private final long n;
+        private final long multiplier;
+
+        Permutation(long n) {
+            this.n = n;
+            long multiplier = 0x9E3779B97L % n;
+            while (gcd(multiplier, n) != 1) {
+                multiplier++;
+            }
+            this.multiplier = multiplier;
+        }
+
+        long apply(long rank) {
+            return 1 + Math.floorMod((rank - 1) * multiplier, n);
+        }
+
+        private static long gcd(long a, long b) {
+            return b == 0 ? a : gcd(b, a % b);
+        }
+    }
+
+    /**
+     * Выборка рангов 1..n по закону Зипфа методом rejection-inversion (Hörmann, Derflinger),
+     * без таблицы вероятностей размером n
+     */
+    private static final class Zipf {
+
+        private final int n;
+        private final double exponent;
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double s;
+
+        Zipf(int n, double exponent) {
+            this.n = n;
+            this.exponent = exponent;
+            this.hIntegralX1 = hIntegral(1.5) - 1;
+            this.hIntegralN = hIntegral(n + 0.5);
+            this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+
+        int sample(SplittableRandom random) {
+            while (true) {
+                double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                int k = (int) Math.max(1, Math.min(n, (long) (x + 0.5)));
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1 - exponent) * logX) * logX;
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = Math.max(-1, x * (1 - exponent));
+            return Math.exp(helper1(t) * x);
+        }
+
+        private static double helper1(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1 / 3.0 - 0.25 * x));
+        }
+
+        private static double helper2(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x * (1 / 3.0) * (1 + 0.25 * x));
+        }
+    }
 }
@@ -0,0 +1,44 @@
+package com.example.library;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Заполнение пустой БД синтетическими данными при старте (application.test-data.enabled=true).
+ * Выполняется при создании бина (схема уже создана), то есть до того, как метрики и сводки выдач считывают
+ * начальное состояние из БД, и до запуска веб-сервера
+ */
+@Component
+@RequiredArgsConstructor
+@DependsOn("entityManagerFactory")
+@ConditionalOnProperty(name = "application.test-data.enabled", havingValue = "true")
+public class TestDataLoader implements InitializingBean {
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${application.test-data.issues:100000}")
+    private long issues;
+
+    @Value("${application.test-data.seed:42}")
+    private long seed;
+
+    @Value("${application.max-allowed-books:1}")
+    private int booksLimit;
+
+    @Override
+    public void afterPropertiesSet() {
+        Long books = jdbcTemplate.queryForObject("select count(*) from books", Long.class);
+        if (books != null && books > 0) {
+            throw new IllegalStateException("Тестовые данные загружаются только в пустую БД");
+        }
+        new TestDataGenerator(TestDataGenerator.Settings.scaled(issues, seed, booksLimit)).load(dataSource);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.library;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Профиль virtual. На Java до 21 Spring молча игнорирует spring.threads.virtual.enabled, и приложение
+ * работает на платформенных потоках с пулом, урезанным под виртуальные. Поэтому запуск сразу прерывается
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("virtual")
+public class VirtualThreadsConfig {
+
+    static final int REQUIRED_JAVA_VERSION = 21;
+
+    public VirtualThreadsConfig() {
+        requireJavaVersion(Runtime.version().feature());
+    }
+
+    static void requireJavaVersion(int feature) {
+        if (feature < REQUIRED_JAVA_VERSION) {
+            throw new IllegalStateException("Профиль virtual требует Java " + REQUIRED_JAVA_VERSION
+                    + "+, запущено на Java " + feature + ". Соберите и запустите на JDK 21: mvn -Pjava21 package");
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.library.analytics;
+
+import com.example.library.journal.IssueJournal;
+import com.example.library.model.BookCirculation;
+import com.example.library.model.BookPopularity;
+import com.example.library.model.HourlyCirculation;
+import com.example.library.model.Issue;
+import com.example.library.model.ReturnedIssue;
+import com.example.library.repo.IssueRepository;
+import com.example.library.repo.ReturnedIssueRepository;
+import com.example.library.service.IssueEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Статистика выдач для планирования: сводки поддерживаются по событиям IssueService, поэтому запросы отвечают
+ * из памяти и не читают таблицы выдач.
+ * <ul>
+ *     <li>счётчики выдач и возвратов по каждой книге за всё время</li>
+ *     <li>почасовые счётчики выдач и возвратов в скользящем окне window</li>
+ *     <li>по сводке Space-Saving на каждый день окна для самых популярных книг: top-N за несколько дней -
+ *     объединение не больше window дней по top-capacity ключей</li>
+ * </ul>
+ * Корзины окна - кольцевые массивы: корзина, чьё время вышло из окна, обнуляется при следующей записи в неё.
+ * <p>
+ * Сводки меняет один поток за раз: слушатель только кладёт событие в очередь и применяет накопившиеся события,
+ * если блокировка свободна, поэтому запросы выдачи не ждут друг друга. Запросы к сводкам сначала применяют очередь
+ */
+@Slf4j
+@Component
+public class CirculationAnalytics implements SmartInitializingSingleton {
+
+    private static final int HOURS_PER_DAY = 24;
+
+    private final IssueRepository issueRepository;
+    private final ReturnedIssueRepository returnedIssueRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Optional<IssueJournal> journal;
+    private final int days;
+    private final int topCapacity;
+
+    private final Map<Long, long[]> bookCounters = new HashMap<>();
+    /**
+     * Номер часа (день эпохи * 24 + час) для каждой корзины; корзина с другим номером считается пустой
+     */
+    private final long[] hourStamps;
+    private final long[] hourIssued;
+    private final long[] hourReturned;
+    private final long[] dayStamps;
+    private final SpaceSaving[] dayTop;
+
+    private final Queue<IssueEvent> events = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public CirculationAnalytics(IssueRepository issueRepository, ReturnedIssueRepository returnedIssueRepository,
+                                TransactionTemplate transactionTemplate, Optional<IssueJournal> journal,
+                                @Value("${application.analytics.window:7d}") Duration window,
+                                @Value("${application.analytics.top-capacity:200}") int topCapacity) {
+        this.issueRepository = issueRepository;
+        this.returnedIssueRepository = returnedIssueRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.journal = journal;
+        this.days = (int) Math.max(1, window.toDays());
+        this.topCapacity = topCapacity;
+        hourStamps = new long[days * HOURS_PER_DAY];
+        hourIssued = new long[hourStamps.length];
+        hourReturned = new long[hourStamps.length];
+        dayStamps = new long[days];
+        dayTop = new SpaceSaving[days];
+        for (int i = 0; i < days; i++) {
+            dayTop[i] = new SpaceSaving(topCapacity);
+        }
+        Arrays.fill(hourStamps, Long.MIN_VALUE);
+        Arrays.fill(dayStamps, Long.MIN_VALUE);
+    }
+
+    /**
+     * Сводки строятся по БД один раз при старте, до запуска веб-сервера: выдачи, сделанные позже, приходят
+     * только событиями и не учитываются дважды. Дальше сводки поддерживаются по событиям
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        // выдачи из журнала, не перенесённые в БД до остановки, должны попасть в сводки
+        journal.ifPresent(IssueJournal::recover);
+        LocalDateTime now = LocalDateTime.now();
+        lock.lock();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<Issue> issues = issueRepository.streamAll()) {
+                    issues.forEach(issue -> issued(issue.getBookId(), issue.getIssued_at(), now));
+                }
+                try (Stream<ReturnedIssue> returned = returnedIssueRepository.streamAll()) {
+                    returned.forEach(issue -> {
+                        issued(issue.getBookId(), issue.getIssued_at(), now);
+                        returned(issue.getBookId(), issue.getReturned_at(), now);
+                    });
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+        log.info("Статистика выдач: книг с выдачами {}", bookCounters.size());
+    }
+
+    @EventListener
+    public void onIssue(IssueEvent event) {
+        events.add(event);
+        if (lock.tryLock()) {
+            try {
+                applyEvents();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return выдачи и возвраты книги за всё время
+     */
+    public BookCirculation getBookCirculation(long bookId) {
+        lock.lock();
+        try {
+            applyEvents();
+            long[] counters = bookCounters.getOrDefault(bookId, new long[2]);
+            return new BookCirculation(bookId, counters[0], counters[1]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Самые выдаваемые книги за последние days дней, включая сегодняшний
+     *
+     * @param days  число дней, не больше окна; null - всё окно
+     * @param limit число книг, не больше top-capacity
+     */
+    public List<BookPopularity> getTopBooks(Integer days, int limit) {
+        long today = LocalDate.now().toEpochDay();
+        int span = days == null ? this.days : Math.max(1, Math.min(days, this.days));
+        lock.lock();
+        try {
+            applyEvents();
+            List<SpaceSaving> sketches = new ArrayList<>(span);
+            for (long day = today - span + 1; day <= today; day++) {
+                int slot = (int) Math.floorMod(day, this.days);
+                if (dayStamps[slot] == day && !dayTop[slot].isEmpty()) {
+                    sketches.add(dayTop[slot]);
+                }
+            }
+            return SpaceSaving.top(sketches, Math.max(1, Math.min(limit, topCapacity))).stream()
+                    .map(it -> new BookPopularity(it.key(), it.count(), it.error()))
+                    .toList();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Выдачи и возвраты по часам за последние hours часов, включая текущий, от старых к новым
+     *
+     * @param hours число часов, не больше окна
+     */
+    public List<HourlyCirculation> getHourlyCirculation(int hours) {
+        long current = hourOf(LocalDateTime.now());
+        int span = Math.max(1, Math.min(hours, hourStamps.length));
+        List<HourlyCirculation> result = new ArrayList<>(span);
+        lock.lock();
+        try {
+            applyEvents();
+            for (long hour = current - span + 1; hour <= current; hour++) {
+                int slot = (int) Math.floorMod(hour, hourStamps.length);
+                boolean filled = hourStamps[slot] == hour;
+                result.add(new HourlyCirculation(startOf(hour), filled ? hourIssued[slot] : 0,
+                        filled ? hourReturned[slot] : 0));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Применяет накопившиеся события, вызывается под lock. Событие, добавленное после выхода отсюда, применит
+     * следующий слушатель или запрос к сводкам
+     */
+    private void applyEvents() {
+        LocalDateTime now = LocalDateTime.now();
+        for (IssueEvent event = events.poll(); event != null; event = events.poll()) {
+            Issue issue = event.issue();
+            if (event.type() == IssueEvent.Type.ISSUED) {
+                issued(issue.getBookId(), issue.getIssued_at(), now);
+            } else {
+                LocalDateTime returnedAt = issue.getReturned_at();
+                returned(issue.getBookId(), returnedAt == null ? now : returnedAt, now);
+            }
+        }
+    }
+
+    private void issued(long bookId, LocalDateTime issuedAt, LocalDateTime now) {
+        bookCounters.computeIfAbsent(bookId, id -> new long[2])[0]++;
+        int slot = hourSlot(issuedAt, now);
+        if (slot >= 0) {
+            hourIssued[slot]++;
+        }
+        slot = daySlot(issuedAt.toLocalDate().toEpochDay(), now);
+        if (slot >= 0) {
+            dayTop[slot].offer(bookId);
+        }
+    }
+
+    private void returned(long bookId, LocalDateTime returnedAt, LocalDateTime now) {
+        bookCounters.computeIfAbsent(bookId, id -> new long[2])[1]++;
+        int slot = hourSlot(returnedAt, now);
+        if (slot >= 0) {
+            hourReturned[slot]++;
+        }
+    }
+
+    /**
+     * @return корзина часа (обнулённая, если в ней был более старый час) или -1, если час уже вышел из окна
+     */
+    private int hourSlot(LocalDateTime time, LocalDateTime now) {
+        long hour = hourOf(time);
+        int slot = (int) Math.floorMod(hour, hourStamps.length);
+        if (hourStamps[slot] > hour || hour <= hourOf(now) - hourStamps.length) {
+            return -1;
+        }
+        if (hourStamps[slot] != hour) {
+            hourStamps[slot] = hour;
+            hourIssued[slot] = 0;
+            hourReturned[slot] = 0;
+        }
+        return slot;
+    }
+
+    private int daySlot(long day, LocalDateTime now) {
+        int slot = (int) Math.floorMod(day, days);
+        if (dayStamps[slot] > day || day <= now.toLocalDate().toEpochDay() - days) {
+            return -1;
+        }
+        if (dayStamps[slot] != day) {
+            dayStamps[slot] = day;
+            dayTop[slot] = new SpaceSaving(topCapacity);
+        }
+        return slot;
+    }
+
+    private static long hourOf(LocalDateTime time) {
+        return time.toLocalDate().toEpochDay() * HOURS_PER_DAY + time.getHour();
+    }
+
+    private static LocalDateTime startOf(long hour) {
+        return LocalDate.ofEpochDay(Math.floorDiv(hour, HOURS_PER_DAY)).atStartOfDay()
+                .plusHours(Math.floorMod(hour, HOURS_PER_DAY));
+    }
+}
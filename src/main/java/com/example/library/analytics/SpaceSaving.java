@@ -0,0 +1,111 @@
+package com.example.library.analytics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Сводка самых частых ключей потока (алгоритм Space-Saving) в памяти O(capacity).
+ * <p>
+ * Пока ключей не больше capacity, счётчики точные. Новый ключ при заполненной сводке вытесняет ключ с минимальным
+ * счётчиком и получает его значение + 1, вытесненное значение запоминается как погрешность. Поэтому оценка count
+ * не меньше точного числа, а count - error не больше него; ключ с частотой больше n / capacity всегда в сводке.
+ * Добавление - O(log capacity). Не потокобезопасно
+ */
+final class SpaceSaving {
+
+    private static final Comparator<Counter> BY_COUNT = Comparator.comparingLong(Counter::count)
+            .thenComparingLong(Counter::key);
+
+    private final int capacity;
+    private final Map<Long, Counter> counters = new HashMap<>();
+    private final TreeSet<Counter> byCount = new TreeSet<>(BY_COUNT);
+
+    SpaceSaving(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    void offer(long key) {
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            byCount.remove(counter);
+            counter = new Counter(key, counter.count + 1, counter.error);
+        } else if (counters.size() < capacity) {
+            counter = new Counter(key, 1, 0);
+        } else {
+            Counter evicted = byCount.pollFirst();
+            counters.remove(evicted.key);
+            counter = new Counter(key, evicted.count + 1, evicted.count);
+        }
+        counters.put(key, counter);
+        byCount.add(counter);
+    }
+
+    /**
+     * Граница счётчика для ключей, которых нет в сводке: 0, пока сводка не заполнена
+     */
+    long minCount() {
+        return counters.size() < capacity ? 0 : byCount.first().count;
+    }
+
+    boolean isEmpty() {
+        return counters.isEmpty();
+    }
+
+    /**
+     * Счётчики нескольких сводок, сложенные по правилу объединения Space-Saving: отсутствующий в сводке ключ
+     * получает её {@link #minCount()} и в count, и в error, так что свойства оценки сохраняются
+     *
+     * @return limit ключей с наибольшим count, по убыванию count
+     */
+    static List<Counter> top(List<SpaceSaving> sketches, int limit) {
+        Map<Long, Counter> merged = new HashMap<>();
+        long minSum = 0;
+        for (SpaceSaving sketch : sketches) {
+            long min = sketch.minCount();
+            for (Counter counter : sketch.counters.values()) {
+                // ключ, впервые встреченный в этой сводке, получает минимумы предыдущих
+                merged.merge(counter.key, new Counter(counter.key, minSum + counter.count, minSum + counter.error),
+                        (a, b) -> new Counter(a.key, a.count + counter.count, a.error + counter.error));
+            }
+            for (Counter counter : merged.values()) {
+                if (min > 0 && !sketch.counters.containsKey(counter.key)) {
+                    counter.count += min;
+                    counter.error += min;
+                }
+            }
+            minSum += min;
+        }
+        List<Counter> top = new ArrayList<>(merged.values());
+        top.sort(BY_COUNT.reversed());
+        return top.subList(0, Math.min(limit, top.size()));
+    }
+
+    static final class Counter {
+
+        private final long key;
+        private long count;
+        private long error;
+
+        private Counter(long key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        long key() {
+            return key;
+        }
+
+        long count() {
+            return count;
+        }
+
+        long error() {
+            return error;
+        }
+    }
+}
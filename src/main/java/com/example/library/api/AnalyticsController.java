@@ -0,0 +1,59 @@
+package com.example.library.api;
+
+import com.example.library.analytics.CirculationAnalytics;
+import com.example.library.aspect.Timer;
+import com.example.library.model.BookCirculation;
+import com.example.library.model.BookPopularity;
+import com.example.library.model.HourlyCirculation;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@Slf4j
+@RestController
+@RequestMapping("/analytics")
+@Tag(name = "Analytics")
+public class AnalyticsController {
+
+    @Autowired
+    private CirculationAnalytics analytics;
+
+    //  GET /analytics/books/top
+    @Timer
+    @GetMapping("/books/top")
+    @Operation(summary = "get most issued books", description = "Загружает самые выдаваемые книги за последние days " +
+            "дней (по умолчанию - всё окно статистики) по убыванию оценки числа выдач")
+    public ResponseEntity<List<BookPopularity>> getTopBooks(@RequestParam(required = false) Integer days,
+                                                            @RequestParam(defaultValue = "10") int limit) {
+        log.info("Получен запрос самых выдаваемых книг: days = {}, limit = {}", days, limit);
+
+        return ResponseEntity.status(HttpStatus.OK).body(analytics.getTopBooks(days, limit));
+    }
+
+    //  GET /analytics/books/{id}
+    @Timer
+    @GetMapping("/books/{id}")
+    @Operation(summary = "get book circulation", description = "Загружает количество выдач и возвратов книги за всё время")
+    public ResponseEntity<BookCirculation> getBookCirculation(@PathVariable long id) {
+        log.info("Получен запрос оборота книги: id = {}", id);
+
+        return ResponseEntity.status(HttpStatus.OK).body(analytics.getBookCirculation(id));
+    }
+
+    //  GET /analytics/circulation
+    @Timer
+    @GetMapping("/circulation")
+    @Operation(summary = "get issues per hour", description = "Загружает количество выдач и возвратов по часам " +
+            "за последние hours часов, включая текущий, от старых к новым")
+    public ResponseEntity<List<HourlyCirculation>> getHourlyCirculation(@RequestParam(defaultValue = "24") int hours) {
+        log.info("Получен запрос выдач по часам: hours = {}", hours);
+
+        return ResponseEntity.status(HttpStatus.OK).body(analytics.getHourlyCirculation(hours));
+    }
+}
@@ -1,12 +1,14 @@
 package com.example.library.api;
 
 import com.example.library.aspect.Timer;
+import com.example.library.cache.CollectionVersions;
 import com.example.library.model.Book;
 import com.example.library.service.BookService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -24,31 +26,54 @@ public class BookController {
 
     @Autowired
     private BookService bookService;
+    @Autowired
+    private CollectionVersions versions;
 
     // GET  /book
     @Timer
     @GetMapping()
-    @Operation(summary = "get all books", description = "Загружает список книг, внесённых в систему")
-    public ResponseEntity<List<Book>> getAllBooks() {
-        log.info("Получен запрос актуального списка книг");
+    @Operation(summary = "get all books", description = "Загружает страницу списка книг, внесённых в систему, " +
+            "в порядке возрастания id. Курсор следующей страницы (параметр after) возвращается в заголовке " +
+            "X-Next-Cursor" + PageResponses.PAGE_SIZE_DESCRIPTION + ". " +
+            "Поддерживает условный запрос по ETag (If-None-Match) и Last-Modified (If-Modified-Since)")
+    public ResponseEntity<List<Book>> getAllBooks(@RequestParam(defaultValue = "0") long after,
+                                                  @RequestParam(required = false) Integer limit,
+                                                  @RequestHeader HttpHeaders headers) {
+        log.info("Получен запрос актуального списка книг: after = {}, limit = {}", after, limit);
+
+        return ConditionalResponses.get(versions.books(), headers,
+                () -> PageResponses.ok(bookService.showBooks(after, limit)));
+    }
 
-        return new ResponseEntity<>(bookService.showAllBooks(), HttpStatus.OK);
+    //  GET /book/search
+    @Timer
+    @GetMapping("/search")
+    @Operation(summary = "search books by name", description = "Ищет книги по словам названия без учёта регистра: " +
+            "каждое слово запроса должно совпадать со словом названия или быть его началом. Лучшие совпадения первыми")
+    public ResponseEntity<List<Book>> searchBooks(@RequestParam String q,
+                                                  @RequestParam(required = false) Integer limit) {
+        log.info("Получен запрос поиска книг: q = {}, limit = {}", q, limit);
+
+        return ResponseEntity.status(HttpStatus.OK).body(bookService.searchBooks(q, limit));
     }
 
     //  GET /book/{id}
     @Timer
     @GetMapping("/{id}")
-    @Operation(summary = "get info about book", description = "Загружает информацию о запрашиваемой книге")
-    public ResponseEntity<Book> getBookInfo(@PathVariable long id) {
+    @Operation(summary = "get info about book", description = "Загружает информацию о запрашиваемой книге. " +
+            "Поддерживает условный запрос по ETag (If-None-Match) и Last-Modified (If-Modified-Since)")
+    public ResponseEntity<Book> getBookInfo(@PathVariable long id, @RequestHeader HttpHeaders headers) {
         log.info("Получен запрос информации о книге: Id = {}", id);
 
-        final Book book;
-        try {
-            book = bookService.showBookInfo(id);
-        } catch (NoSuchElementException e) {
-            return ResponseEntity.notFound().build();
-        }
-        return ResponseEntity.status(HttpStatus.OK).body(book);
+        return ConditionalResponses.get(versions.books(), headers, () -> {
+            final Book book;
+            try {
+                book = bookService.showBookInfo(id);
+            } catch (NoSuchElementException e) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.status(HttpStatus.OK).body(book);
+        });
     }
 
     //  DELETE /book/{id}
@@ -81,5 +106,15 @@ public class BookController {
         return ResponseEntity.status(HttpStatus.CREATED).body(book);
     }
 
+    //  POST /book/bulk
+    @PostMapping("/bulk")
+    @Operation(summary = "add new books in bulk", description = "Добавляет в систему список книг. " +
+            "Возвращает результат по каждому элементу: CREATED, DUPLICATE или INVALID")
+    public ResponseEntity<List<BulkItemResult>> addNewBooks(@RequestBody List<BookRequest> requests) {
+        log.info("Получен запрос на массовое добавление книг: количество = {}", requests.size());
+
+        return ResponseEntity.status(HttpStatus.OK).body(bookService.addNewBooks(requests));
+    }
+
 
 }
\ No newline at end of file
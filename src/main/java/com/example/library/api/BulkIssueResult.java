@@ -0,0 +1,21 @@
+package com.example.library.api;
+
+/**
+ * Результат обработки одной выдачи или одного возврата в пакетном запросе
+ *
+ * @param issueId  идентификатор выдачи (созданной или возвращаемой), если она известна
+ * @param readerId идентификатор читателя
+ * @param bookId   идентификатор книги
+ * @param status   результат
+ */
+public record BulkIssueResult(Long issueId, Long readerId, Long bookId, Status status) {
+
+    public enum Status {
+        CREATED,
+        RETURNED,
+        NOT_FOUND,
+        LIMIT_EXCEEDED,
+        BOOK_UNAVAILABLE,
+        ALREADY_RETURNED
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.library.api;
+
+/**
+ * Результат обработки одного элемента массовой загрузки
+ *
+ * @param name   название книги / имя читателя из запроса
+ * @param id     идентификатор созданной записи (только для CREATED)
+ * @param status результат
+ */
+public record BulkItemResult(String name, Long id, Status status) {
+
+    public enum Status {
+        CREATED,
+        DUPLICATE,
+        INVALID
+    }
+
+    public static BulkItemResult created(String name, long id) {
+        return new BulkItemResult(name, id, Status.CREATED);
+    }
+
+    public static BulkItemResult duplicate(String name) {
+        return new BulkItemResult(name, null, Status.DUPLICATE);
+    }
+
+    public static BulkItemResult invalid(String name) {
+        return new BulkItemResult(name, null, Status.INVALID);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.library.api;
+
+import com.example.library.cache.CollectionVersions;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.function.Supplier;
+
+/**
+ * Условный GET по версии коллекции: если у клиента та же версия (If-None-Match, а без него If-Modified-Since),
+ * ответ 304 без обращения к сервису. Иначе к ответу добавляются ETag, Last-Modified и Cache-Control: no-cache,
+ * чтобы клиент хранил ответ, но каждый раз сверял версию.
+ * Работает и в Spring MVC, и в профиле reactive, поэтому заголовки запроса разбираются здесь, а не через WebRequest
+ */
+final class ConditionalResponses {
+
+    private ConditionalResponses() {
+    }
+
+    /**
+     * @param version  версия коллекции, прочитанная до загрузки данных
+     * @param request  заголовки запроса
+     * @param response загрузка данных; заголовки версии добавляются только к успешному ответу
+     */
+    static <T> ResponseEntity<T> get(CollectionVersions.Version version, HttpHeaders request,
+                                     Supplier<ResponseEntity<T>> response) {
+        String etag = '"' + version.etag() + '"';
+        boolean settled = version.lastModifiedSettled(Instant.now());
+        HttpHeaders validators = new HttpHeaders();
+        validators.setETag(etag);
+        validators.setCacheControl(CacheControl.noCache());
+        if (settled) {
+            validators.setLastModified(version.lastModified().truncatedTo(ChronoUnit.SECONDS));
+        }
+        if (notModified(request, etag, version, settled)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(validators).build();
+        }
+
+        ResponseEntity<T> entity = response.get();
+        if (!entity.getStatusCode().is2xxSuccessful()) {
+            return entity;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(entity.getHeaders());
+        headers.putAll(validators);
+        return new ResponseEntity<>(entity.getBody(), headers, entity.getStatusCode());
+    }
+
+    private static boolean notModified(HttpHeaders request, String etag, CollectionVersions.Version version,
+                                       boolean settled) {
+        if (!request.getIfNoneMatch().isEmpty()) {
+            // слабое сравнение, как требует RFC 9110 для If-None-Match
+            return request.getIfNoneMatch().stream().anyMatch(tag -> tag.equals(etag) || tag.equals("W/" + etag));
+        }
+        long since = request.getIfModifiedSince();
+        return since >= 0 && settled
+                && version.lastModified().truncatedTo(ChronoUnit.SECONDS).toEpochMilli() <= since;
+    }
+}
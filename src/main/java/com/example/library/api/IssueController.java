@@ -2,15 +2,23 @@ package com.example.library.api;
 
 import com.example.library.aspect.Timer;
 import com.example.library.model.Issue;
+import com.example.library.model.OverdueLoan;
+import com.example.library.overdue.OverdueDetector;
 import com.example.library.service.IssueService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -19,12 +27,19 @@ import java.util.NoSuchElementException;
 @RestController
 @RequestMapping("/issue")
 @Tag(name = "Issuance")
+@Profile("!reactive")
 
 public class IssueController {
 
 
+    private static final String NDJSON = "application/x-ndjson";
+
     @Autowired
     private IssueService service;
+    @Autowired
+    private OverdueDetector overdueDetector;
+    @Autowired
+    private ObjectMapper objectMapper;
 
     //  POST /issue
     @PostMapping
@@ -46,6 +61,26 @@ public class IssueController {
         return ResponseEntity.status(HttpStatus.CREATED).body(issue);
     }
 
+    //  POST /issue/bulk
+    @PostMapping("/bulk")
+    @Operation(summary = "issue books in bulk", description = "Регистрирует пакет выдач книг. Возвращает результат " +
+            "по каждому элементу: CREATED, NOT_FOUND, LIMIT_EXCEEDED или BOOK_UNAVAILABLE")
+    public ResponseEntity<List<BulkIssueResult>> issueBooks(@RequestBody List<IssueRequest> requests) {
+        log.info("Получен запрос на пакетную выдачу: количество = {}", requests.size());
+
+        return ResponseEntity.status(HttpStatus.OK).body(service.issueAll(requests));
+    }
+
+    //  PUT /issue/bulk
+    @PutMapping("/bulk")
+    @Operation(summary = "return books in bulk", description = "Регистрирует возврат книг по списку id выдач. " +
+            "Возвращает результат по каждому элементу: RETURNED, ALREADY_RETURNED или NOT_FOUND")
+    public ResponseEntity<List<BulkIssueResult>> returnBooks(@RequestBody List<Long> issueIds) {
+        log.info("Получен запрос на пакетный возврат: количество = {}", issueIds.size());
+
+        return ResponseEntity.status(HttpStatus.OK).body(service.returnAll(issueIds));
+    }
+
     //  GET /issue/{id}
     @Timer
     @GetMapping("/{id}")
@@ -65,11 +100,45 @@ public class IssueController {
     //  GET /issue
     @Timer
     @GetMapping
-    @Operation(summary = "get information about all book issues", description = "Загружает информацию о всех выдачах книг читателям")
-    public ResponseEntity<List<Issue>> getAllIssues() {
-        log.info("Получен запрос актуального списка всех выдач книг");
+    @Operation(summary = "get information about all book issues", description = "Загружает страницу списка выдач " +
+            "книг читателям в порядке возрастания id. Курсор следующей страницы (параметр after) возвращается " +
+            "в заголовке X-Next-Cursor" + PageResponses.PAGE_SIZE_DESCRIPTION)
+    public ResponseEntity<List<Issue>> getAllIssues(@RequestParam(defaultValue = "0") long after,
+                                                    @RequestParam(required = false) Integer limit) {
+        log.info("Получен запрос актуального списка всех выдач книг: after = {}, limit = {}", after, limit);
+
+        return PageResponses.ok(service.showIssues(after, limit));
+    }
+
+    //  GET /issue/overdue
+    @Timer
+    @GetMapping("/overdue")
+    @Operation(summary = "get overdue book issues", description = "Загружает страницу просроченных и не возвращённых " +
+            "выдач в порядке возрастания id. Курсор следующей страницы (параметр after) возвращается в заголовке " +
+            "X-Next-Cursor" + PageResponses.PAGE_SIZE_DESCRIPTION)
+    public ResponseEntity<List<OverdueLoan>> getOverdueIssues(@RequestParam(defaultValue = "0") long after,
+                                                              @RequestParam(required = false) Integer limit) {
+        log.info("Получен запрос списка просроченных выдач: after = {}, limit = {}", after, limit);
+
+        return PageResponses.ok(overdueDetector.getOverdueLoans(after, limit));
+    }
 
-        return new ResponseEntity<>(service.showAllIssues(), HttpStatus.OK);
+    //  GET /issue/export
+    @GetMapping(value = "/export", produces = NDJSON)
+    @Operation(summary = "export all book issues", description = "Выгружает все выдачи книг в формате " +
+            "newline-delimited JSON (по одной выдаче в строке), не загружая их в память сервера целиком")
+    public ResponseEntity<StreamingResponseBody> exportIssues() {
+        log.info("Получен запрос на выгрузку всех выдач книг");
+
+        StreamingResponseBody body = out -> service.exportAllIssues(issue -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(issue));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.status(HttpStatus.OK).contentType(MediaType.parseMediaType(NDJSON)).body(body);
     }
 
     //  PUT /issue/{issueId}
@@ -0,0 +1,100 @@
+package com.example.library.api;
+
+import com.example.library.model.Issue;
+import com.example.library.model.OverdueLoan;
+import com.example.library.overdue.OverdueDetector;
+import com.example.library.service.KeysetPage;
+import com.example.library.service.ReactiveIssueService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Реактивный вариант {@link IssueController} (профиль reactive), маршруты - в ReactiveConfig.
+ * Коды ответов те же, что у контроллера
+ */
+@Slf4j
+@Component
+@Profile("reactive")
+@RequiredArgsConstructor
+public class IssueHandler {
+
+    private final ReactiveIssueService service;
+    private final OverdueDetector overdueDetector;
+
+    //  POST /issue
+    public Mono<ServerResponse> issueBook(ServerRequest request) {
+        return request.bodyToMono(IssueRequest.class)
+                .doOnNext(body -> log.info("Получен запрос на выдачу: readerId = {}, bookId = {}",
+                        body.getReaderId(), body.getBookId()))
+                .flatMap(service::issue)
+                .flatMap(issue -> ServerResponse.status(HttpStatus.CREATED).bodyValue(issue))
+                .onErrorResume(NoSuchElementException.class, e -> ServerResponse.notFound().build())
+                .onErrorResume(RuntimeException.class, e -> ServerResponse.status(HttpStatus.CONFLICT).build());
+    }
+
+    //  GET /issue/{id}
+    public Mono<ServerResponse> getIssueInfo(ServerRequest request) {
+        long id = Long.parseLong(request.pathVariable("id"));
+        log.info("Получен запрос на описание факта выдачи: id = {}", id);
+
+        return service.showIssueInfo(id)
+                .flatMap(issue -> ServerResponse.ok().bodyValue(issue))
+                .onErrorResume(NoSuchElementException.class, e -> ServerResponse.notFound().build());
+    }
+
+    //  GET /issue
+    public Mono<ServerResponse> getAllIssues(ServerRequest request) {
+        long after = request.queryParam("after").map(Long::parseLong).orElse(0L);
+        Integer limit = request.queryParam("limit").map(Integer::valueOf).orElse(null);
+        log.info("Получен запрос актуального списка всех выдач книг: after = {}, limit = {}", after, limit);
+
+        return service.showIssues(after, limit).flatMap(page -> {
+            ServerResponse.BodyBuilder response = ServerResponse.ok();
+            if (page.nextCursor() != null) {
+                response.header(PageResponses.NEXT_CURSOR_HEADER, String.valueOf(page.nextCursor()));
+            }
+            return response.bodyValue(page.items());
+        });
+    }
+
+    //  GET /issue/overdue
+    public Mono<ServerResponse> getOverdueIssues(ServerRequest request) {
+        long after = request.queryParam("after").map(Long::parseLong).orElse(0L);
+        Integer limit = request.queryParam("limit").map(Integer::valueOf).orElse(null);
+        log.info("Получен запрос списка просроченных выдач: after = {}, limit = {}", after, limit);
+
+        KeysetPage<OverdueLoan> page = overdueDetector.getOverdueLoans(after, limit);
+        ServerResponse.BodyBuilder response = ServerResponse.ok();
+        if (page.nextCursor() != null) {
+            response.header(PageResponses.NEXT_CURSOR_HEADER, String.valueOf(page.nextCursor()));
+        }
+        return response.bodyValue(page.items());
+    }
+
+    //  GET /issue/export
+    public Mono<ServerResponse> exportIssues(ServerRequest request) {
+        log.info("Получен запрос на выгрузку всех выдач книг");
+
+        return ServerResponse.ok().contentType(MediaType.APPLICATION_NDJSON)
+                .body(service.exportAllIssues(), Issue.class);
+    }
+
+    //  PUT /issue/{issueId}
+    public Mono<ServerResponse> returnBook(ServerRequest request) {
+        long issueId = Long.parseLong(request.pathVariable("issueId"));
+        log.info("Получен запрос на возврат книги по выдаче с id = {}", issueId);
+
+        return service.returnBook(issueId)
+                .flatMap(issue -> ServerResponse.ok().bodyValue(issue))
+                .onErrorResume(NoSuchElementException.class, e -> ServerResponse.notFound().build());
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.library.api;
+
+import com.example.library.service.KeysetPage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+
+/**
+ * Ответ со страницей списка: тело - записи страницы,
+ * курсор следующей страницы передаётся в заголовке {@value #NEXT_CURSOR_HEADER}
+ */
+final class PageResponses {
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /**
+     * Описание размера страницы для документации API: запрос без limit тоже возвращает только первую страницу
+     */
+    static final String PAGE_SIZE_DESCRIPTION = ". Без параметра limit возвращается не больше "
+            + KeysetPage.DEFAULT_LIMIT + " записей (limit - от 1 до " + KeysetPage.MAX_LIMIT + "): чтобы получить "
+            + "весь список, запрашивайте следующие страницы, пока в ответе есть " + NEXT_CURSOR_HEADER;
+
+    private PageResponses() {
+    }
+
+    static <T> ResponseEntity<List<T>> ok(KeysetPage<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.OK);
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.nextCursor()));
+        }
+        return response.body(page.items());
+    }
+}
@@ -1,14 +1,17 @@
 package com.example.library.api;
 
 import com.example.library.aspect.Timer;
+import com.example.library.cache.CollectionVersions;
 import com.example.library.model.Issue;
 import com.example.library.model.Reader;
 import com.example.library.service.IssueService;
+import com.example.library.service.KeysetPage;
 import com.example.library.service.ReaderService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -25,31 +28,42 @@ public class ReaderController {
     private ReaderService readerService;
     @Autowired
     private IssueService issueService;
+    @Autowired
+    private CollectionVersions versions;
 
     // GET  /reader
     @Timer
     @GetMapping()
-    @Operation(summary = "get all readers", description = "Загружает список читателей, зарегистрированных в системе")
-    public ResponseEntity<List<Reader>> getAllReaders() {
-        log.info("Получен запрос актуального списка читателей");
+    @Operation(summary = "get all readers", description = "Загружает страницу списка читателей, зарегистрированных " +
+            "в системе, в порядке возрастания id. Курсор следующей страницы (параметр after) возвращается в заголовке " +
+            "X-Next-Cursor" + PageResponses.PAGE_SIZE_DESCRIPTION + ". " +
+            "Поддерживает условный запрос по ETag (If-None-Match) и Last-Modified (If-Modified-Since)")
+    public ResponseEntity<List<Reader>> getAllReaders(@RequestParam(defaultValue = "0") long after,
+                                                      @RequestParam(required = false) Integer limit,
+                                                      @RequestHeader HttpHeaders headers) {
+        log.info("Получен запрос актуального списка читателей: after = {}, limit = {}", after, limit);
 
-        return new ResponseEntity<>(readerService.showAllReaders(), HttpStatus.OK);
+        return ConditionalResponses.get(versions.readers(), headers,
+                () -> PageResponses.ok(readerService.showReaders(after, limit)));
     }
 
     //  GET /reader/{id}
     @Timer
     @GetMapping("/{id}")
-    @Operation(summary = "get info about reader", description = "Загружает информацию о запрашиваемом читателе")
-    public ResponseEntity<Reader> getReaderInfo(@PathVariable long id) {
+    @Operation(summary = "get info about reader", description = "Загружает информацию о запрашиваемом читателе. " +
+            "Поддерживает условный запрос по ETag (If-None-Match) и Last-Modified (If-Modified-Since)")
+    public ResponseEntity<Reader> getReaderInfo(@PathVariable long id, @RequestHeader HttpHeaders headers) {
         log.info("Получен запрос информации о читателе: Id = {}", id);
 
-        final Reader reader;
-        try {
-            reader = readerService.showReaderInfo(id);
-        } catch (NoSuchElementException e) {
-            return ResponseEntity.notFound().build();
-        }
-        return ResponseEntity.status(HttpStatus.OK).body(reader);
+        return ConditionalResponses.get(versions.readers(), headers, () -> {
+            final Reader reader;
+            try {
+                reader = readerService.showReaderInfo(id);
+            } catch (NoSuchElementException e) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.status(HttpStatus.OK).body(reader);
+        });
     }
 
     //  DELETE /reader/{id}
@@ -82,19 +96,33 @@ public class ReaderController {
         return ResponseEntity.status(HttpStatus.CREATED).body(reader);
     }
 
+    //  POST /reader/bulk
+    @PostMapping("/bulk")
+    @Operation(summary = "add new readers in bulk", description = "Добавляет в систему список читателей. " +
+            "Возвращает результат по каждому элементу: CREATED, DUPLICATE или INVALID")
+    public ResponseEntity<List<BulkItemResult>> addNewReaders(@RequestBody List<ReaderRequest> requests) {
+        log.info("Получен запрос на массовое добавление читателей: количество = {}", requests.size());
+
+        return ResponseEntity.status(HttpStatus.OK).body(readerService.addNewReaders(requests));
+    }
+
     //  GET /reader/{id}/issue
     @Timer
     @GetMapping("/{id}/issue")
-    @Operation(summary = "get all issuance by reader", description = "Загружает список выдач книг читателя")
-    public ResponseEntity<List<Issue>> getReaderIssues(@PathVariable long id) {
-        log.info("Получен запрос информации о выдачах читателя с id = {}", id);
+    @Operation(summary = "get all issuance by reader", description = "Загружает страницу выдач книг читателя " +
+            "от новых к старым. Курсор следующей страницы (параметр before) возвращается в заголовке X-Next-Cursor" +
+            PageResponses.PAGE_SIZE_DESCRIPTION)
+    public ResponseEntity<List<Issue>> getReaderIssues(@PathVariable long id,
+                                                       @RequestParam(required = false) Long before,
+                                                       @RequestParam(required = false) Integer limit) {
+        log.info("Получен запрос информации о выдачах читателя с id = {}: before = {}, limit = {}", id, before, limit);
 
-        final List<Issue> readersIssues;
+        final KeysetPage<Issue> readersIssues;
         try {
-            readersIssues = issueService.getAllIssuesByReader(id);
+            readersIssues = issueService.getReaderIssues(id, before, limit);
         } catch (NoSuchElementException e) {
             return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.status(HttpStatus.OK).body(readersIssues);
+        return PageResponses.ok(readersIssues);
     }
 }
\ No newline at end of file
@@ -1,9 +1,8 @@
 package com.example.library.api;
 
 import com.example.library.aspect.Timer;
-import com.example.library.model.Book;
-import com.example.library.model.Issue;
 import com.example.library.model.Reader;
+import com.example.library.model.ReaderIssue;
 import com.example.library.service.BookService;
 import com.example.library.service.IssueService;
 import com.example.library.service.ReaderService;
@@ -15,8 +14,8 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 
-import java.util.ArrayList;
 import java.util.List;
 
 @Controller
@@ -66,16 +65,11 @@ public class UiController {
 
     // GET  /ui/reader/{id}
     @GetMapping("/reader/{id}")
-    @Operation(summary = "get issuance list by reader", description = "Загружает страницу со списком всех книг, " +
-            "когда-либо выданных читателю")
-    public String getIssuesByReaderId(@PathVariable long id, Model model) {
+    @Operation(summary = "get issuance list by reader", description = "Загружает страницу со списком последних книг, " +
+            "выданных читателю, от новых к старым")
+    public String getIssuesByReaderId(@PathVariable long id, @RequestParam(required = false) Integer limit, Model model) {
         Reader reader = readerService.showReaderInfo(id);
-        List<Issue> issues = issueService.getAllIssuesByReader(id);
-        List<Book> books = new ArrayList<>();
-        for (Issue issue : issues) {
-            books.add(bookService.showBookInfo(issue.getBookId()));
-        }
-        model.addAttribute("books", books);
+        List<ReaderIssue> issues = issueService.getReaderHistory(id, limit);
         model.addAttribute("reader", reader);
         model.addAttribute("issues", issues);
         return "booksByReader";
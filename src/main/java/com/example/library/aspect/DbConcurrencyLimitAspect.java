@@ -0,0 +1,62 @@
+package com.example.library.aspect;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Ограничивает количество одновременных вызовов сервисов (а значит, и обращений к БД) значением
+ * application.db-concurrency.limit. Лишние запросы ждут на семафоре до открытия транзакции,
+ * а не внутри пула соединений или драйвера, где виртуальный поток может оказаться закреплён за платформенным.
+ * Разрешение берётся один раз на внешний вызов: вложенные вызовы сервисов в том же потоке его не запрашивают.
+ * Реактивные методы (возвращающие Publisher) не ограничиваются: они только собирают конвейер и не должны блокироваться.
+ * Не ограничиваются и методы с {@link NoDbConcurrencyLimit}
+ */
+@Slf4j
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+@ConditionalOnProperty(name = "application.db-concurrency.limit")
+public class DbConcurrencyLimitAspect {
+
+    private final Semaphore permits;
+    private final ThreadLocal<Boolean> holding = new ThreadLocal<>();
+
+    public DbConcurrencyLimitAspect(MeterRegistry meterRegistry, Environment environment,
+                                    @Value("${application.db-concurrency.limit}") int limit) {
+        this.permits = new Semaphore(limit, true);
+        Gauge.builder("library.db.concurrency.waiting", permits, Semaphore::getQueueLength).register(meterRegistry);
+        Gauge.builder("library.db.concurrency.available", permits, Semaphore::availablePermits).register(meterRegistry);
+        log.info("Одновременных обращений к сервисам не больше {}, потоки запросов: {}", limit,
+                Threading.VIRTUAL.isActive(environment) ? "виртуальные" : "платформенные");
+    }
+
+    @Around("@within(org.springframework.stereotype.Service) && execution(public * *(..))"
+            + " && !execution(org.reactivestreams.Publisher+ *(..))"
+            + " && !@annotation(com.example.library.aspect.NoDbConcurrencyLimit)")
+    public Object limit(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (holding.get() != null) {
+            return joinPoint.proceed();
+        }
+        permits.acquire();
+        holding.set(Boolean.TRUE);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            holding.remove();
+            permits.release();
+        }
+    }
+}
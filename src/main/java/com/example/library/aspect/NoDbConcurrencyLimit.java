@@ -0,0 +1,15 @@
+package com.example.library.aspect;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Метод сервиса не занимает разрешение {@link DbConcurrencyLimitAspect}: он работает с данными в памяти
+ * или долго отдаёт данные клиенту, и держать разрешение всё это время незачем
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface NoDbConcurrencyLimit {
+}
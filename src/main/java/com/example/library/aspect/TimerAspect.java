@@ -1,17 +1,61 @@
 package com.example.library.aspect;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Замеряет время выполнения методов, помеченных {@link Timer} (или всех методов помеченного класса),
+ * и записывает его в таймер Micrometer {@value #METRIC_NAME} с тегами class, method, outcome и exception.
+ * Логирование замеров необязательно и выполняется для доли вызовов application.timer.log.sample-rate.
+ * Аспект внешний, поэтому в замер входит и ожидание в {@link DbConcurrencyLimitAspect}
+ */
 @Slf4j
 @Aspect
 @Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
 public class TimerAspect {
 
+    static final String METRIC_NAME = "library.method.timer";
+
+    private final MeterRegistry meterRegistry;
+    private final double[] percentiles;
+    private final Duration[] slo;
+    private final boolean histogram;
+    private final boolean logEnabled;
+    private final double logSampleRate;
+
+    private final Map<TimerKey, io.micrometer.core.instrument.Timer> timers = new ConcurrentHashMap<>();
+
+    public TimerAspect(MeterRegistry meterRegistry,
+                       @Value("${application.timer.percentiles:0.5,0.95,0.99}") double[] percentiles,
+                       @Value("${application.timer.slo:}") Duration[] slo,
+                       @Value("${application.timer.histogram:false}") boolean histogram,
+                       @Value("${application.timer.log.enabled:false}") boolean logEnabled,
+                       @Value("${application.timer.log.sample-rate:0.01}") double logSampleRate) {
+        this.meterRegistry = meterRegistry;
+        this.percentiles = percentiles;
+        this.slo = slo;
+        this.histogram = histogram;
+        this.logEnabled = logEnabled;
+        this.logSampleRate = logSampleRate;
+    }
+
     @Pointcut("within(@com.example.library.aspect.Timer *)")
     public void beansAnnotatedWith() {
 
@@ -24,17 +68,45 @@ public class TimerAspect {
 
     @Around("beansAnnotatedWith() || methodsAnnotatedWith()")
     public Object timerAspect(ProceedingJoinPoint joinPoint) throws Throwable {
+        long start = System.nanoTime();
+        Throwable failure = null;
         try {
-            long start = System.currentTimeMillis();
-            Object result = joinPoint.proceed();
-            long elapsedTime = System.currentTimeMillis() - start;
-            //  в лог записать следующее: className - methodName #(количество секунд выполнения)
-            log.info(joinPoint.getTarget().getClass().getName() + " - " + joinPoint.getSignature().getName() + " #" +
-                    elapsedTime * 0.001 + " sec.");
-            return result;
+            return joinPoint.proceed();
         } catch (Throwable e) {
-            log.error("exception: [{}, {}]", e.getClass(), e.getMessage());
+            failure = e;
             throw e;
+        } finally {
+            long elapsedNanos = System.nanoTime() - start;
+            Class<?> type = joinPoint.getTarget().getClass();
+            Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+            TimerKey key = new TimerKey(type, method, failure == null ? null : failure.getClass());
+            timers.computeIfAbsent(key, this::registerTimer).record(elapsedNanos, TimeUnit.NANOSECONDS);
+
+            if (logEnabled && ThreadLocalRandom.current().nextDouble() < logSampleRate) {
+                //  в лог записать следующее: className - methodName #(количество секунд выполнения)
+                if (failure == null) {
+                    log.info("{} - {} #{} sec.", type.getName(), method.getName(), elapsedNanos / 1e9);
+                } else {
+                    log.error("{} - {} #{} sec., exception: [{}, {}]", type.getName(), method.getName(),
+                            elapsedNanos / 1e9, failure.getClass(), failure.getMessage());
+                }
+            }
         }
     }
-}
\ No newline at end of file
+
+    private io.micrometer.core.instrument.Timer registerTimer(TimerKey key) {
+        return io.micrometer.core.instrument.Timer.builder(METRIC_NAME)
+                .description("Время выполнения методов, помеченных @Timer")
+                .tag("class", key.type().getSimpleName())
+                .tag("method", key.method().getName())
+                .tag("outcome", key.exception() == null ? "success" : "error")
+                .tag("exception", key.exception() == null ? "none" : key.exception().getSimpleName())
+                .publishPercentiles(percentiles)
+                .publishPercentileHistogram(histogram)
+                .serviceLevelObjectives(slo)
+                .register(meterRegistry);
+    }
+
+    private record TimerKey(Class<?> type, Method method, Class<?> exception) {
+    }
+}
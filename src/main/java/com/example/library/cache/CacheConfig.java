@@ -0,0 +1,69 @@
+package com.example.library.cache;
+
+import com.example.library.model.Book;
+import com.example.library.model.Reader;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Кэши книг и читателей. Вытеснение по размеру (W-TinyLFU), статистика попаданий/промахов/вытеснений
+ * публикуется в Micrometer как cache.* с тегом cache=books|readers
+ */
+@Configuration
+public class CacheConfig {
+
+    @Value("${application.cache.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${application.cache.negative-ttl:30s}")
+    private Duration negativeTtl;
+
+    @Bean
+    public LookupCache<Book> bookCache(MeterRegistry meterRegistry) {
+        return new LookupCache<>(CaffeineCacheMetrics.monitor(meterRegistry, this.<Book>newCache(), "books"));
+    }
+
+    @Bean
+    public LookupCache<Reader> readerCache(MeterRegistry meterRegistry) {
+        return new LookupCache<>(CaffeineCacheMetrics.monitor(meterRegistry, this.<Reader>newCache(), "readers"));
+    }
+
+    private <V> Cache<Long, Optional<V>> newCache() {
+        return Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new NegativeEntryExpiry<V>(negativeTtl))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Найденные сущности живут в кэше до вытеснения или инвалидации, промахи - не дольше negativeTtl
+     * (на случай записи в БД в обход JPA)
+     */
+    private record NegativeEntryExpiry<V>(Duration negativeTtl) implements Expiry<Long, Optional<V>> {
+
+        @Override
+        public long expireAfterCreate(Long key, Optional<V> value, long currentTime) {
+            return value.isPresent() ? Long.MAX_VALUE : negativeTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(Long key, Optional<V> value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Long key, Optional<V> value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
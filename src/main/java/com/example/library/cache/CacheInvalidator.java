@@ -0,0 +1,29 @@
+package com.example.library.cache;
+
+import com.example.library.model.Book;
+import com.example.library.model.Reader;
+import com.example.library.repo.EntityChangedEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Удаляет из кэшей изменённые книги и читателей. Срабатывает на любую запись через JPA,
+ * поэтому покрывает и addNewBook/deleteBook/addNewReader/deleteReader, и прямую работу с репозиториями
+ */
+@Component
+@RequiredArgsConstructor
+public class CacheInvalidator {
+
+    private final LookupCache<Book> bookCache;
+    private final LookupCache<Reader> readerCache;
+
+    @EventListener
+    public void onEntityChanged(EntityChangedEvent event) {
+        if (event.entity() instanceof Book book) {
+            bookCache.invalidate(book.getId());
+        } else if (event.entity() instanceof Reader reader) {
+            readerCache.invalidate(reader.getId());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.library.cache;
+
+import com.example.library.model.Book;
+import com.example.library.model.Reader;
+import com.example.library.repo.EntityChangedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Версии коллекций книг и читателей для условных GET (ETag, Last-Modified): версия меняется после фиксации
+ * любой записи книги или читателя через JPA.
+ * <p>
+ * Версия меняется после commit: запрос, прочитавший версию до этого, получает старый ETag и при следующем опросе
+ * просто загрузит данные заново, а новый ETag никогда не достаётся старым данным. В ETag входит время старта,
+ * поэтому ETag из прошлого запуска приложения не совпадёт со счётчиком, начатым заново.
+ * <p>
+ * Версии хранятся в памяти процесса и меняются только от записей этого экземпляра, поэтому условные GET
+ * корректны, пока приложение работает в одном экземпляре (как и с {@link com.example.library.id.AtomicIdAllocator}).
+ * За балансировщиком у каждого экземпляра была бы своя версия, и клиент получал бы 304 на данные, изменённые через
+ * другой экземпляр; для нескольких экземпляров версию нужно хранить в БД (например, счётчик изменений в той же
+ * транзакции, что и запись). Записи в обход JPA версию тоже не меняют
+ */
+@Component
+public class CollectionVersions {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private long bookChanges;
+    private long readerChanges;
+    private volatile Version books = version("books", 0);
+    private volatile Version readers = version("readers", 0);
+
+    public Version books() {
+        return books;
+    }
+
+    public Version readers() {
+        return readers;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public synchronized void onEntityChanged(EntityChangedEvent event) {
+        if (event.entity() instanceof Book) {
+            books = version("books", ++bookChanges);
+        } else if (event.entity() instanceof Reader) {
+            readers = version("readers", ++readerChanges);
+        }
+    }
+
+    private Version version(String collection, long changes) {
+        return new Version(collection + "-" + epoch + "-" + changes, Instant.now());
+    }
+
+    /**
+     * @param etag         значение ETag (без кавычек)
+     * @param lastModified время последнего изменения; до первой записи - время старта
+     */
+    public record Version(String etag, Instant lastModified) {
+
+        /**
+         * Last-Modified можно отдавать, только когда секунда изменения прошла: иначе изменение в ту же секунду
+         * после ответа не изменило бы Last-Modified (в заголовке точность - секунды)
+         */
+        public boolean lastModifiedSettled(Instant now) {
+            return lastModified.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1).compareTo(now) <= 0;
+        }
+    }
+}
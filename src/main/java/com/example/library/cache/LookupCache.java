@@ -0,0 +1,41 @@
+package com.example.library.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+import java.util.function.LongFunction;
+
+/**
+ * Ограниченный по размеру кэш поиска сущностей по id (read-through).
+ * Кэшируются и найденные сущности, и промахи (Optional.empty()), промахи - с коротким сроком жизни
+ */
+public class LookupCache<V> {
+
+    private final Cache<Long, Optional<V>> cache;
+
+    public LookupCache(Cache<Long, Optional<V>> cache) {
+        this.cache = cache;
+    }
+
+    public Optional<V> get(long id, LongFunction<Optional<V>> loader) {
+        return cache.get(id, loader::apply);
+    }
+
+    /**
+     * Удаляет запись из кэша. Внутри транзакции запись удаляется повторно после коммита,
+     * чтобы не осталось значения, загруженного параллельным запросом до фиксации изменений
+     */
+    public void invalidate(long id) {
+        cache.invalidate(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(id);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package com.example.library.eventlog;
+
+import com.example.library.journal.IssueJournal;
+import com.example.library.model.Book;
+import com.example.library.model.Reader;
+import com.example.library.repo.EntityChangedEvent;
+import com.example.library.service.IssueEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сохранение книг, читателей и выдач между перезапусками при БД в памяти (application.event-log.enabled=true).
+ * <p>
+ * Каждое зафиксированное изменение дописывается в журнал событий ({@link SegmentedLog}) до ответа на запрос.
+ * После snapshot-every записей фоновый поток пишет снимок состояния из БД ({@link Snapshot}) и удаляет
+ * сегменты журнала, которые в него вошли. При старте в пустую БД загружается последний снимок (простые индексы
+ * на время загрузки удаляются и строятся заново), затем применяются записи журнала после него. Время до готовности
+ * складывается из загрузки снимка (линейно по размеру библиотеки) и применения хвоста не длиннее snapshot-every
+ * записей; оно публикуется в метрике library.event-log.restore
+ * <p>
+ * Снимок читает БД без остановки записи, поэтому номер последней учтённой записи берётся до чтения, а записи
+ * после него при восстановлении применяются повторно: каждая запись содержит состояние сущности целиком
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+@ConditionalOnProperty(name = "application.event-log.enabled", havingValue = "true")
+public class EventLogPersistence implements InitializingBean, DisposableBean {
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final List<String> TABLES = List.of("books", "readers", "issues", "issue_history");
+    // org.h2.engine.Constants.TRANSACTION_SNAPSHOT
+    private static final int SNAPSHOT_ISOLATION = 6;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final Optional<IssueJournal> issueJournal;
+    private final MeterRegistry meterRegistry;
+    private final Path path;
+    private final long snapshotEvery;
+    private final boolean snapshotOnShutdown;
+    private final SegmentedLog eventLog;
+    private final Object snapshotMonitor = new Object();
+
+    private volatile long snapshotSequence;
+    private volatile long restoreMillis;
+    private volatile boolean snapshotRequested;
+    private volatile boolean running;
+    private Timer snapshotTimer;
+    private Thread snapshotter;
+
+    public EventLogPersistence(DataSource dataSource, JdbcTemplate jdbcTemplate, Optional<IssueJournal> issueJournal,
+                               MeterRegistry meterRegistry,
+                               @Value("${application.event-log.path:data/event-log}") Path path,
+                               @Value("${application.event-log.segment-size:64MB}") DataSize segmentSize,
+                               @Value("${application.event-log.snapshot-every:1000000}") long snapshotEvery,
+                               @Value("${application.event-log.snapshot-on-shutdown:true}") boolean snapshotOnShutdown,
+                               @Value("${application.event-log.fsync:false}") boolean fsync) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.issueJournal = issueJournal;
+        this.meterRegistry = meterRegistry;
+        this.path = path;
+        this.snapshotEvery = snapshotEvery;
+        this.snapshotOnShutdown = snapshotOnShutdown;
+        this.eventLog = new SegmentedLog(path, segmentSize.toBytes(), fsync);
+    }
+
+    /**
+     * Восстановление: схема уже создана (entityManagerFactory), остальные компоненты ещё не обращались к БД
+     */
+    @Override
+    public void afterPropertiesSet() {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось создать каталог журнала событий " + path, e);
+        }
+        Optional<Path> snapshot = Snapshot.latest(path);
+        if (snapshot.isPresent()) {
+            for (String table : TABLES) {
+                Long rows = jdbcTemplate.queryForObject("select count(*) from " + table, Long.class);
+                if (rows != null && rows > 0) {
+                    throw new IllegalStateException("Состояние из журнала событий восстанавливается только в пустую БД");
+                }
+            }
+            snapshotSequence = loadSnapshot(snapshot.get());
+        }
+        long snapshotMillis = (System.nanoTime() - start) / 1_000_000;
+        long replayed = replay();
+        restoreMillis = (System.nanoTime() - start) / 1_000_000;
+        log.info("Журнал событий {}: снимок загружен за {} мс, применено записей журнала {} за {} мс",
+                path.toAbsolutePath(), snapshotMillis, replayed, restoreMillis - snapshotMillis);
+
+        TimeGauge.builder("library.event-log.restore", this, TimeUnit.MILLISECONDS, it -> it.restoreMillis)
+                .description("Восстановление состояния при старте: загрузка снимка и применение журнала событий")
+                .register(meterRegistry);
+        snapshotTimer = Timer.builder("library.event-log.snapshot")
+                .description("Запись снимка состояния")
+                .register(meterRegistry);
+        running = true;
+        snapshotter = new Thread(this::snapshotLoop, "event-log-snapshot");
+        snapshotter.setDaemon(true);
+        snapshotter.start();
+    }
+
+    /**
+     * Первый снимок - сразу после старта, чтобы в него попали и данные, загруженные в обход журнала (тестовые)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (Snapshot.latest(path).isEmpty()) {
+            requestSnapshot();
+        }
+    }
+
+    /**
+     * Книги и читатели: запись в журнал после фиксации транзакции, откаченные изменения в журнал не попадают
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEntityChanged(EntityChangedEvent event) {
+        boolean removed = event.type() == EntityChangedEvent.Type.REMOVED;
+        if (event.entity() instanceof Book book) {
+            append(removed ? LogRecord.bookRemoved(book.getId()) : LogRecord.book(book));
+        } else if (event.entity() instanceof Reader reader) {
+            append(removed ? LogRecord.readerRemoved(reader.getId()) : LogRecord.reader(reader));
+        }
+    }
+
+    /**
+     * Выдачи и возвраты: событие публикуется после записи выдачи
+     */
+    @EventListener
+    public void onIssue(IssueEvent event) {
+        append(LogRecord.issue(event.issue()));
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        synchronized (snapshotMonitor) {
+            snapshotMonitor.notifyAll();
+        }
+        snapshotter.join();
+        if (snapshotOnShutdown && eventLog.lastSequence() > snapshotSequence) {
+            snapshot();
+        }
+        eventLog.close();
+    }
+
+    private void append(LogRecord record) {
+        if (eventLog.append(record) - snapshotSequence >= snapshotEvery && !snapshotRequested) {
+            requestSnapshot();
+        }
+    }
+
+    private void requestSnapshot() {
+        synchronized (snapshotMonitor) {
+            snapshotRequested = true;
+            snapshotMonitor.notifyAll();
+        }
+    }
+
+    private void snapshotLoop() {
+        while (running) {
+            synchronized (snapshotMonitor) {
+                while (running && !snapshotRequested) {
+                    try {
+                        snapshotMonitor.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                snapshotRequested = false;
+            }
+            if (!running) {
+                return;
+            }
+            try {
+                snapshot();
+            } catch (RuntimeException e) {
+                log.error("Не удалось записать снимок в {}", path, e);
+            }
+        }
+    }
+
+    synchronized void snapshot() {
+        long start = System.nanoTime();
+        long sequence = eventLog.lastSequence();
+        // выдачи, записанные в журнал выдач, но ещё не перенесённые в БД, должны попасть в снимок
+        issueJournal.ifPresent(IssueJournal::awaitApplied);
+        Path file = Snapshot.write(path, sequence, this::scan);
+        snapshotSequence = sequence;
+        eventLog.deleteUpTo(sequence);
+        long elapsed = System.nanoTime() - start;
+        snapshotTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Снимок {} записан за {} мс", file.getFileName(), elapsed / 1_000_000);
+    }
+
+    /**
+     * Чтение всех таблиц в одной транзакции с изоляцией SNAPSHOT: строки снимка согласованы между собой
+     * (например, названия книг уникальны), даже если во время чтения идёт запись
+     */
+    private void scan(RowSink sink) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            connection.setTransactionIsolation(SNAPSHOT_ISOLATION);
+            try (Statement statement = connection.createStatement()) {
+                statement.setFetchSize(BATCH_SIZE);
+                try (ResultSet rs = statement.executeQuery("select id, name from books order by id")) {
+                    while (rs.next()) {
+                        sink.book(rs.getLong(1), rs.getString(2));
+                    }
+                }
+                try (ResultSet rs = statement.executeQuery("select id, name from readers order by id")) {
+                    while (rs.next()) {
+                        sink.reader(rs.getLong(1), rs.getString(2));
+                    }
+                }
+                try (ResultSet rs = statement.executeQuery(
+                        "select id, book_id, reader_id, issued_at from issues order by id")) {
+                    while (rs.next()) {
+                        sink.issue(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getObject(4, LocalDateTime.class), null);
+                    }
+                }
+                try (ResultSet rs = statement.executeQuery(
+                        "select id, book_id, reader_id, issued_at, returned_at from issue_history order by id")) {
+                    while (rs.next()) {
+                        sink.issue(rs.getLong(1), rs.getLong(2), rs.getLong(3),
+                                rs.getObject(4, LocalDateTime.class), rs.getObject(5, LocalDateTime.class));
+                    }
+                }
+            } finally {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Не удалось прочитать состояние для снимка", e);
+        }
+    }
+
+    /**
+     * Загрузка снимка пакетами JDBC без простых индексов: построить индекс по загруженной таблице быстрее,
+     * чем обновлять его при вставке каждой строки
+     */
+    private long loadSnapshot(Path file) {
+        try (Connection connection = dataSource.getConnection()) {
+            List<String> indexes = dropIndexes(connection);
+            long sequence;
+            try (JdbcRowSink sink = new JdbcRowSink(connection)) {
+                sequence = Snapshot.read(file, sink);
+                sink.flush();
+            }
+            try (Statement statement = connection.createStatement()) {
+                for (String index : indexes) {
+                    statement.execute(index);
+                }
+            }
+            return sequence;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Не удалось загрузить снимок " + file, e);
+        }
+    }
+
+    /**
+     * @return команды, которые создают удалённые индексы заново
+     */
+    private static List<String> dropIndexes(Connection connection) throws SQLException {
+        Map<String, List<String>> columns = new LinkedHashMap<>();
+        Map<String, String> tables = new LinkedHashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "select i.index_name, i.table_name, c.column_name, c.ordering_specification "
+                        + "from information_schema.indexes i "
+                        + "join information_schema.index_columns c "
+                        + "on c.index_schema = i.index_schema and c.index_name = i.index_name "
+                        + "where i.table_schema = schema() and i.index_type_name = 'INDEX' "
+                        + "order by i.index_name, c.ordinal_position")) {
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    if (TABLES.contains(rs.getString(2).toLowerCase())) {
+                        tables.put(rs.getString(1), rs.getString(2));
+                        columns.computeIfAbsent(rs.getString(1), name -> new ArrayList<>()).add(rs.getString(3) + " " + rs.getString(4));
+                    }
+                }
+            }
+        }
+        List<String> create = new ArrayList<>();
+        try (Statement statement = connection.createStatement()) {
+            for (Map.Entry<String, String> index : tables.entrySet()) {
+                statement.execute("drop index " + index.getKey());
+                create.add("create index " + index.getKey() + " on " + index.getValue()
+                        + " (" + String.join(", ", columns.get(index.getKey())) + ")");
+            }
+        }
+        return create;
+    }
+
+    /**
+     * Применение записей журнала после снимка по одной, в порядке записи, с фиксацией каждые {@value #BATCH_SIZE}
+     */
+    private long replay() {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement mergeBook = connection.prepareStatement("merge into books (id, name) key (id) values (?, ?)");
+             PreparedStatement mergeReader = connection.prepareStatement("merge into readers (id, name) key (id) values (?, ?)");
+             PreparedStatement deleteBookName = connection.prepareStatement("delete from books where name = ? and id <> ?");
+             PreparedStatement deleteReaderName = connection.prepareStatement("delete from readers where name = ? and id <> ?");
+             PreparedStatement deleteBook = connection.prepareStatement("delete from books where id = ?");
+             PreparedStatement deleteReader = connection.prepareStatement("delete from readers where id = ?");
+             PreparedStatement mergeIssue = connection.prepareStatement("merge into issues "
+                     + "(id, book_id, reader_id, issued_at) key (id) select ?, ?, ?, ? "
+                     + "where not exists (select 1 from issue_history where id = ?)");
+             PreparedStatement mergeReturned = connection.prepareStatement("merge into issue_history "
+                     + "(id, book_id, reader_id, issued_at, returned_at) key (id) values (?, ?, ?, ?, ?)");
+             PreparedStatement deleteIssue = connection.prepareStatement("delete from issues where id = ?")) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            long[] applied = {0};
+            long replayed = eventLog.recover(snapshotSequence, record -> {
+                try {
+                    switch (record.type()) {
+                        // имя могло освободиться и перейти к другой сущности позже, чем сделан снимок:
+                        // прежний владелец имени удаляется, его конечное состояние восстановят следующие записи
+                        case BOOK_SAVED -> saveNamed(deleteBookName, mergeBook, record);
+                        case READER_SAVED -> saveNamed(deleteReaderName, mergeReader, record);
+                        case BOOK_REMOVED -> delete(deleteBook, record.id());
+                        case READER_REMOVED -> delete(deleteReader, record.id());
+                        case ISSUE_SAVED -> saveIssue(mergeIssue, mergeReturned, deleteIssue, record);
+                    }
+                    if (++applied[0] % BATCH_SIZE == 0) {
+                        connection.commit();
+                    }
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Не удалось применить запись журнала событий " + record, e);
+                }
+            });
+            connection.commit();
+            connection.setAutoCommit(autoCommit);
+            return replayed;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Не удалось применить журнал событий " + path, e);
+        }
+    }
+
+    private static void saveNamed(PreparedStatement deleteName, PreparedStatement merge, LogRecord record) throws SQLException {
+        deleteName.setString(1, record.name());
+        deleteName.setLong(2, record.id());
+        deleteName.executeUpdate();
+        merge.setLong(1, record.id());
+        merge.setString(2, record.name());
+        merge.executeUpdate();
+    }
+
+    /**
+     * Открытая выдача - в issues, возвращённая - в историю с удалением из issues. Возврат мог попасть в журнал
+     * раньше выдачи (события публикуются после снятия блокировок), поэтому возвращённая выдача не открывается снова
+     */
+    private static void saveIssue(PreparedStatement mergeIssue, PreparedStatement mergeReturned,
+                                  PreparedStatement deleteIssue, LogRecord record) throws SQLException {
+        PreparedStatement merge = record.returnedAt() == null ? mergeIssue : mergeReturned;
+        merge.setLong(1, record.id());
+        merge.setLong(2, record.bookId());
+        merge.setLong(3, record.readerId());
+        merge.setTimestamp(4, timestamp(record.issuedAt()));
+        if (record.returnedAt() != null) {
+            merge.setTimestamp(5, timestamp(record.returnedAt()));
+            delete(deleteIssue, record.id());
+        } else {
+            merge.setLong(5, record.id());
+        }
+        merge.executeUpdate();
+    }
+
+    private static void delete(PreparedStatement delete, long id) throws SQLException {
+        delete.setLong(1, id);
+        delete.executeUpdate();
+    }
+
+    private static Timestamp timestamp(LocalDateTime time) {
+        return time == null ? null : Timestamp.valueOf(time);
+    }
+}
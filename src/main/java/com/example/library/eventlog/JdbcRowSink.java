@@ -0,0 +1,95 @@
+package com.example.library.eventlog;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Пакетная вставка в пустые таблицы на одном соединении без автофиксации; после последней строки нужен {@link #flush()}
+ */
+public final class JdbcRowSink implements RowSink, AutoCloseable {
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private final Connection connection;
+    private final boolean autoCommit;
+    private final PreparedStatement books;
+    private final PreparedStatement readers;
+    private final PreparedStatement issues;
+    private final PreparedStatement returnedIssues;
+    private int pending;
+
+    public JdbcRowSink(Connection connection) throws SQLException {
+        this.connection = connection;
+        this.autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        books = connection.prepareStatement("insert into books (id, name) values (?, ?)");
+        readers = connection.prepareStatement("insert into readers (id, name) values (?, ?)");
+        issues = connection.prepareStatement("insert into issues (id, book_id, reader_id, issued_at) values (?, ?, ?, ?)");
+        returnedIssues = connection.prepareStatement(
+                "insert into issue_history (id, book_id, reader_id, issued_at, returned_at) values (?, ?, ?, ?, ?)");
+    }
+
+    @Override
+    public void book(long id, String name) {
+        named(books, id, name);
+    }
+
+    @Override
+    public void reader(long id, String name) {
+        named(readers, id, name);
+    }
+
+    @Override
+    public void issue(long id, long bookId, long readerId, LocalDateTime issuedAt, LocalDateTime returnedAt) {
+        try {
+            // открытые выдачи - в issues, возвращённые - в историю
+            PreparedStatement statement = returnedAt == null ? issues : returnedIssues;
+            statement.setLong(1, id);
+            statement.setLong(2, bookId);
+            statement.setLong(3, readerId);
+            statement.setTimestamp(4, Timestamp.valueOf(issuedAt));
+            if (returnedAt != null) {
+                statement.setTimestamp(5, Timestamp.valueOf(returnedAt));
+            }
+            added(statement);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void named(PreparedStatement statement, long id, String name) {
+        try {
+            statement.setLong(1, id);
+            statement.setString(2, name);
+            added(statement);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void added(PreparedStatement statement) throws SQLException {
+        statement.addBatch();
+        if (++pending == BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    public void flush() throws SQLException {
+        books.executeBatch();
+        readers.executeBatch();
+        issues.executeBatch();
+        returnedIssues.executeBatch();
+        connection.commit();
+        pending = 0;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try (books; readers; issues; returnedIssues) {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.library.eventlog;
+
+import com.example.library.model.Book;
+import com.example.library.model.Issue;
+import com.example.library.model.Reader;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Запись журнала событий: новое состояние книги, читателя или выдачи либо удаление книги или читателя.
+ * Запись хранит состояние целиком, поэтому повторное применение уже применённых записей ничего не меняет
+ */
+record LogRecord(Type type, long id, String name, long bookId, long readerId,
+                 LocalDateTime issuedAt, LocalDateTime returnedAt) {
+
+    enum Type {
+        BOOK_SAVED, BOOK_REMOVED, READER_SAVED, READER_REMOVED, ISSUE_SAVED
+    }
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    static LogRecord book(Book book) {
+        return new LogRecord(Type.BOOK_SAVED, book.getId(), book.getName(), 0, 0, null, null);
+    }
+
+    static LogRecord bookRemoved(long id) {
+        return new LogRecord(Type.BOOK_REMOVED, id, null, 0, 0, null, null);
+    }
+
+    static LogRecord reader(Reader reader) {
+        return new LogRecord(Type.READER_SAVED, reader.getId(), reader.getName(), 0, 0, null, null);
+    }
+
+    static LogRecord readerRemoved(long id) {
+        return new LogRecord(Type.READER_REMOVED, id, null, 0, 0, null, null);
+    }
+
+    static LogRecord issue(Issue issue) {
+        return new LogRecord(Type.ISSUE_SAVED, issue.getId(), null, issue.getBookId(), issue.getReaderId(),
+                issue.getIssued_at(), issue.getReturned_at());
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        buffer.put((byte) type.ordinal()).putLong(id);
+        switch (type) {
+            case BOOK_SAVED, READER_SAVED -> {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                buffer.putShort((short) bytes.length).put(bytes);
+            }
+            case ISSUE_SAVED -> buffer.putLong(bookId)
+                    .putLong(readerId)
+                    .putLong(toMicros(issuedAt))
+                    .putLong(toMicros(returnedAt));
+            default -> {
+            }
+        }
+    }
+
+    static LogRecord readFrom(ByteBuffer buffer) {
+        Type type = Type.values()[buffer.get()];
+        long id = buffer.getLong();
+        return switch (type) {
+            case BOOK_SAVED, READER_SAVED -> {
+                byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+                buffer.get(bytes);
+                yield new LogRecord(type, id, new String(bytes, StandardCharsets.UTF_8), 0, 0, null, null);
+            }
+            case ISSUE_SAVED -> new LogRecord(type, id, null, buffer.getLong(), buffer.getLong(),
+                    fromMicros(buffer.getLong()), fromMicros(buffer.getLong()));
+            default -> new LogRecord(type, id, null, 0, 0, null, null);
+        };
+    }
+
+    /**
+     * Микросекунды с округлением, как при записи в столбец timestamp(6)
+     */
+    static long toMicros(LocalDateTime time) {
+        return time == null ? NO_TIME : time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + (time.getNano() + 500) / 1_000;
+    }
+
+    static LocalDateTime fromMicros(long micros) {
+        return micros == NO_TIME ? null : LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.library.eventlog;
+
+import java.time.LocalDateTime;
+
+/**
+ * Получатель строк библиотеки: сначала все книги и читатели, затем выдачи в порядке возрастания id.
+ * Так передаются строки снимка ({@link Snapshot}) и синтетические данные TestDataGenerator
+ */
+public interface RowSink {
+
+    void book(long id, String name);
+
+    void reader(long id, String name);
+
+    void issue(long id, long bookId, long readerId, LocalDateTime issuedAt, LocalDateTime returnedAt);
+}
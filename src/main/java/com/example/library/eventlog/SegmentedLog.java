@@ -0,0 +1,200 @@
+package com.example.library.eventlog;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Журнал событий из сегментов фиксированного размера, отображённых в память.
+ * <p>
+ * Запись копируется в отображённый сегмент без системного вызова: после падения процесса она остаётся в page cache
+ * ОС, после отключения питания - только при fsync. Сегмент называется номером своей первой записи; запись, которая
+ * не помещается в остаток сегмента, начинает новый. Запись в файле: длина, контрольная сумма, номер и содержимое;
+ * при восстановлении чтение останавливается на первой записи с неверной суммой или номером (недописанный хвост)
+ */
+@Slf4j
+final class SegmentedLog implements AutoCloseable {
+
+    static final String SUFFIX = ".log";
+
+    private static final int HEADER = 2 * Integer.BYTES;
+    private static final int MAX_RECORD = 2048;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private final ByteBuffer scratch = ByteBuffer.allocate(HEADER + MAX_RECORD);
+
+    private MappedByteBuffer current;
+    private long lastSequence;
+
+    SegmentedLog(Path directory, long segmentSize, boolean fsync) {
+        if (segmentSize < HEADER + MAX_RECORD || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Размер сегмента журнала событий вне допустимого диапазона: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = (int) segmentSize;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Читает журнал и передаёт записи с номерами больше after; после чтения журнал готов к добавлению записей
+     *
+     * @return количество переданных записей
+     */
+    synchronized long recover(long after, Consumer<LogRecord> consumer) {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                    .forEach(file -> segments.put(firstSequence(file), file));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать каталог журнала событий " + directory, e);
+        }
+        long recovered = 0;
+        long next = segments.isEmpty() ? after + 1 : segments.firstKey();
+        MappedByteBuffer last = null;
+        for (Iterator<Map.Entry<Long, Path>> it = segments.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Path> segment = it.next();
+            if (segment.getKey() != next) {
+                log.warn("Журнал событий {}: сегмент {} начинается с записи {}, ожидалась {}",
+                        directory, segment.getValue().getFileName(), segment.getKey(), next);
+                next = segment.getKey();
+            }
+            MappedByteBuffer buffer = map(segment.getValue(), false);
+            for (LogRecord record = read(buffer, next); record != null; record = read(buffer, next)) {
+                if (next++ > after) {
+                    consumer.accept(record);
+                    recovered++;
+                }
+            }
+            if (!it.hasNext()) {
+                last = buffer;
+            }
+        }
+        lastSequence = Math.max(next - 1, after);
+        if (last != null && lastSequence == next - 1) {
+            // дальше пишем в последний сегмент, недописанную запись затираем
+            current = last;
+            current.put(current.position(), new byte[Math.min(HEADER + MAX_RECORD, current.remaining())]);
+        } else {
+            current = create(lastSequence + 1);
+        }
+        return recovered;
+    }
+
+    /**
+     * @return номер добавленной записи
+     */
+    synchronized long append(LogRecord record) {
+        long sequence = lastSequence + 1;
+        scratch.clear().position(HEADER);
+        scratch.putLong(sequence);
+        record.writeTo(scratch);
+        int length = scratch.position() - HEADER;
+        scratch.putInt(0, length).putInt(Integer.BYTES, checksum(scratch, HEADER, length)).flip();
+        if (current.remaining() < scratch.remaining()) {
+            if (fsync) {
+                current.force();
+            }
+            current = create(sequence);
+        }
+        int start = current.position();
+        current.put(scratch);
+        if (fsync) {
+            current.force(start, HEADER + length);
+        }
+        return lastSequence = sequence;
+    }
+
+    synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Удаляет сегменты, все записи которых имеют номер не больше sequence (уже вошли в снимок)
+     */
+    synchronized void deleteUpTo(long sequence) {
+        while (segments.size() > 1) {
+            Map.Entry<Long, Path> first = segments.firstEntry();
+            if (segments.higherKey(first.getKey()) > sequence + 1) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(first.getValue());
+            } catch (IOException e) {
+                log.warn("Не удалось удалить сегмент журнала событий {}", first.getValue(), e);
+                return;
+            }
+            segments.pollFirstEntry();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        // отображение освобождается сборщиком мусора, поэтому здесь только сброс на диск
+        if (current != null) {
+            current.force();
+        }
+    }
+
+    private MappedByteBuffer create(long firstSequence) {
+        Path file = directory.resolve(String.format("%020d", firstSequence) + SUFFIX);
+        MappedByteBuffer buffer = map(file, true);
+        segments.put(firstSequence, file);
+        return buffer;
+    }
+
+    private MappedByteBuffer map(Path file, boolean create) {
+        try (FileChannel channel = create
+                ? FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = create ? segmentSize : channel.size();
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть сегмент журнала событий " + file, e);
+        }
+    }
+
+    /**
+     * @return запись с ожидаемым номером или null, если дальше в сегменте её нет
+     */
+    private static LogRecord read(MappedByteBuffer buffer, long sequence) {
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER) {
+            return null;
+        }
+        int length = buffer.getInt(start);
+        if (length < Long.BYTES || length > MAX_RECORD || length > buffer.remaining() - HEADER
+                || buffer.getInt(start + Integer.BYTES) != checksum(buffer, start + HEADER, length)
+                || buffer.getLong(start + HEADER) != sequence) {
+            return null;
+        }
+        LogRecord record = LogRecord.readFrom(buffer.slice(start + HEADER + Long.BYTES, length - Long.BYTES));
+        buffer.position(start + HEADER + length);
+        return record;
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private static long firstSequence(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
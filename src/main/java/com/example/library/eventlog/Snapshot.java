@@ -0,0 +1,160 @@
+package com.example.library.eventlog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Снимок состояния: все книги, читатели и выдачи, в которых учтены записи журнала событий до номера sequence.
+ * Файл пишется во временный и переименовывается после fsync, поэтому снимок в каталоге всегда целый;
+ * контрольная сумма в конце файла проверяется при чтении
+ */
+final class Snapshot {
+
+    static final String SUFFIX = ".snapshot";
+
+    private static final int MAGIC = 0x4C424C53;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final byte END = 0;
+    private static final byte BOOK = 1;
+    private static final byte READER = 2;
+    private static final byte ISSUE = 3;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Записывает снимок: rows передаёт в RowSink все строки; предыдущие снимки после записи удаляются
+     */
+    static Path write(Path directory, long sequence, Consumer<RowSink> rows) {
+        Path file = directory.resolve(String.format("%020d", sequence) + SUFFIX);
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE), new CRC32C());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sequence);
+            rows.accept(new Writer(out));
+            out.writeByte(END);
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать снимок " + file, e);
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+            for (Path older : list(directory)) {
+                if (!older.equals(file)) {
+                    Files.delete(older);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось сохранить снимок " + file, e);
+        }
+        return file;
+    }
+
+    /**
+     * Последний снимок в каталоге
+     */
+    static Optional<Path> latest(Path directory) {
+        return list(directory).stream().max(Comparator.naturalOrder());
+    }
+
+    /**
+     * Передаёт строки снимка в RowSink
+     *
+     * @return номер последней учтённой в снимке записи журнала
+     */
+    static long read(Path file, RowSink sink) {
+        try (InputStream stream = Files.newInputStream(file)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(stream, BUFFER_SIZE), new CRC32C());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalStateException("Файл " + file + " не является снимком журнала событий");
+            }
+            long sequence = in.readLong();
+            for (byte tag = in.readByte(); tag != END; tag = in.readByte()) {
+                switch (tag) {
+                    case BOOK -> sink.book(in.readLong(), in.readUTF());
+                    case READER -> sink.reader(in.readLong(), in.readUTF());
+                    case ISSUE -> sink.issue(in.readLong(), in.readLong(), in.readLong(),
+                            LogRecord.fromMicros(in.readLong()), LogRecord.fromMicros(in.readLong()));
+                    default -> throw new IllegalStateException("Снимок " + file + " повреждён");
+                }
+            }
+            int expected = (int) checked.getChecksum().getValue();
+            if (in.readInt() != expected) {
+                throw new IllegalStateException("Снимок " + file + " повреждён: неверная контрольная сумма");
+            }
+            return sequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать снимок " + file, e);
+        }
+    }
+
+    private static List<Path> list(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать каталог журнала событий " + directory, e);
+        }
+    }
+
+    private record Writer(DataOutputStream out) implements RowSink {
+
+        @Override
+        public void book(long id, String name) {
+            named(BOOK, id, name);
+        }
+
+        @Override
+        public void reader(long id, String name) {
+            named(READER, id, name);
+        }
+
+        @Override
+        public void issue(long id, long bookId, long readerId, LocalDateTime issuedAt, LocalDateTime returnedAt) {
+            try {
+                out.writeByte(ISSUE);
+                out.writeLong(id);
+                out.writeLong(bookId);
+                out.writeLong(readerId);
+                out.writeLong(LogRecord.toMicros(issuedAt));
+                out.writeLong(LogRecord.toMicros(returnedAt));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void named(byte tag, long id, String name) {
+            try {
+                out.writeByte(tag);
+                out.writeLong(id);
+                out.writeUTF(name);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.library.id;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счётчики в памяти процесса, без блокировок. Подходит для одного экземпляра приложения;
+ * при первом обращении счётчик продолжает нумерацию после max(id) в таблицах последовательности
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "application.id-allocator.type", havingValue = "atomic", matchIfMissing = true)
+public class AtomicIdAllocator implements IdAllocator {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<IdSequence, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public long nextId(IdSequence sequence) {
+        return counters.computeIfAbsent(sequence, this::initCounter).getAndIncrement();
+    }
+
+    private AtomicLong initCounter(IdSequence sequence) {
+        Long maxId = jdbcTemplate.queryForObject(sequence.maxIdQuery(), Long.class);
+        return new AtomicLong(maxId + 1);
+    }
+}
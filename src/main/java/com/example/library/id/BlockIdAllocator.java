@@ -0,0 +1,79 @@
+package com.example.library.id;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Резервирует идентификаторы блоками через последовательность в БД (pooled hi/lo).
+ * Один вызов nextval выдаёт экземпляру диапазон из blockSize идентификаторов,
+ * внутри диапазона идентификаторы выдаются атомарным счётчиком без обращения к БД.
+ * Позволяет нескольким экземплярам приложения работать с одной БД без коллизий
+ * (размер блока у всех экземпляров должен совпадать)
+ */
+@Component
+@ConditionalOnProperty(name = "application.id-allocator.type", havingValue = "block")
+public class BlockIdAllocator implements IdAllocator {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long blockSize;
+
+    private final Map<IdSequence, Block> blocks = new ConcurrentHashMap<>();
+
+    public BlockIdAllocator(JdbcTemplate jdbcTemplate,
+                            @Value("${application.id-allocator.block-size:100}") long blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Размер блока идентификаторов должен быть положительным: " + blockSize);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public long nextId(IdSequence sequence) {
+        while (true) {
+            Block block = blocks.get(sequence);
+            if (block != null) {
+                long id = block.next.getAndIncrement();
+                if (id < block.limit) {
+                    return id;
+                }
+            }
+            reserveBlock(sequence, block);
+        }
+    }
+
+    private synchronized void reserveBlock(IdSequence sequence, Block exhausted) {
+        if (blocks.get(sequence) != exhausted) {
+            // блок уже заменён другим потоком
+            return;
+        }
+        if (exhausted == null) {
+            createSequenceIfAbsent(sequence);
+        }
+        Long start = jdbcTemplate.queryForObject("select next value for " + sequence.getSequence(), Long.class);
+        blocks.put(sequence, new Block(start, start + blockSize));
+    }
+
+    private void createSequenceIfAbsent(IdSequence sequence) {
+        Long maxId = jdbcTemplate.queryForObject(sequence.maxIdQuery(), Long.class);
+        jdbcTemplate.execute("create sequence if not exists " + sequence.getSequence()
+                + " start with " + (maxId + 1) + " increment by " + blockSize);
+    }
+
+    private static final class Block {
+
+        private final AtomicLong next;
+        private final long limit;
+
+        private Block(long start, long limit) {
+            this.next = new AtomicLong(start);
+            this.limit = limit;
+        }
+    }
+}
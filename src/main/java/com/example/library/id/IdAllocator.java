@@ -0,0 +1,10 @@
+package com.example.library.id;
+
+/**
+ * Выдаёт уникальные идентификаторы для новых сущностей.
+ * Реализации потокобезопасны; пропуски в нумерации допустимы
+ */
+public interface IdAllocator {
+
+    long nextId(IdSequence sequence);
+}
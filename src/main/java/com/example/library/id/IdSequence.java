@@ -0,0 +1,35 @@
+package com.example.library.id;
+
+import lombok.Getter;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Последовательности идентификаторов сущностей
+ */
+@Getter
+public enum IdSequence {
+
+    BOOKS("books_id_seq", "books"),
+    READERS("readers_id_seq", "readers"),
+    // открытые выдачи и история возвратов нумеруются одной последовательностью
+    ISSUES("issues_id_seq", "issues", "issue_history");
+
+    private final String sequence;
+    private final List<String> tables;
+
+    IdSequence(String sequence, String... tables) {
+        this.sequence = sequence;
+        this.tables = List.of(tables);
+    }
+
+    /**
+     * Запрос наибольшего занятого id во всех таблицах последовательности (0, если таблицы пустые)
+     */
+    public String maxIdQuery() {
+        return tables.stream()
+                .map(table -> "select max(id) as id from " + table)
+                .collect(Collectors.joining(" union all ", "select coalesce(max(id), 0) from (", ")"));
+    }
+}
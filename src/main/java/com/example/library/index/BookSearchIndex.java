@@ -0,0 +1,358 @@
+package com.example.library.index;
+
+import com.example.library.model.Book;
+import com.example.library.repo.EntityChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Инвертированный индекс слов названий книг для поиска без запросов в БД.
+ * <p>
+ * Название разбивается на слова (буквы и цифры) в нижнем регистре. Словарь слов отсортирован, поэтому все слова
+ * с заданным префиксом - один диапазон словаря. Книга находится, если каждое слово запроса - префикс какого-нибудь
+ * слова названия. Выше в выдаче книги, где больше слов запроса совпали целиком.
+ * <p>
+ * Перебираются только книги самого редкого слова запроса: сначала с этим словом целиком, затем с его продолжениями
+ * по порядку словаря, в каждом слове по возрастанию id. Равные по числу совпадений книги идут в порядке перебора,
+ * поэтому перебор заканчивается, как только лучшие limit книг уже не могут быть вытеснены. Просматривается не больше
+ * max-candidates книг: для очень частых слов результат - лучшие среди просмотренных.
+ * Заполняется из БД при старте, до запуска веб-сервера, и обновляется после фиксации каждой записи книги через JPA: в отличие от фильтра
+ * имён, лишняя запись здесь попала бы в результаты поиска, поэтому откаченные изменения в индекс не попадают
+ */
+@Slf4j
+@Component
+public class BookSearchIndex implements SmartInitializingSingleton {
+
+    public static final int DEFAULT_LIMIT = 10;
+    public static final int MAX_LIMIT = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxCandidates;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, Postings> words = new TreeMap<>();
+    private final Map<Long, Entry> books = new HashMap<>();
+
+    public BookSearchIndex(JdbcTemplate jdbcTemplate,
+                           @Value("${application.book-search.max-candidates:10000}") int maxCandidates) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxCandidates = Math.max(1, maxCandidates);
+    }
+
+    /**
+     * До запуска веб-сервера: чтение books не пересекается с запросами, поэтому книга, удалённая после чтения,
+     * не может вернуться в индекс
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        long start = System.nanoTime();
+        jdbcTemplate.query("select id, name from books where name is not null", rs -> {
+            add(rs.getLong(1), rs.getString(2));
+        });
+        log.info("Индекс названий книг: {} книг, {} слов, заполнен за {} мс", books.size(), words.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onEntityChanged(EntityChangedEvent event) {
+        if (!(event.entity() instanceof Book book)) {
+            return;
+        }
+        remove(book.getId());
+        if (event.type() != EntityChangedEvent.Type.REMOVED && book.getName() != null) {
+            add(book.getId(), book.getName());
+        }
+    }
+
+    /**
+     * @param query слова запроса, последнее может быть недописанным
+     * @param limit число книг: по умолчанию {@value #DEFAULT_LIMIT}, не больше {@value #MAX_LIMIT}
+     * @return найденные книги, лучшие первыми; пустой список, если в запросе нет слов
+     */
+    public List<Book> search(String query, Integer limit) {
+        String[] terms = tokenize(query == null ? "" : query);
+        if (terms.length == 0) {
+            return List.of();
+        }
+        int size = limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(limit, MAX_LIMIT));
+        lock.readLock().lock();
+        try {
+            String rarest = terms[0];
+            long rarestCount = Long.MAX_VALUE;
+            for (String term : terms) {
+                long count = count(term, rarestCount);
+                if (count < rarestCount) {
+                    rarest = term;
+                    rarestCount = count;
+                }
+            }
+            return collect(rarest, terms, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Book> collect(String rarest, String[] terms, int size) {
+        // худшее из отобранного - в голове очереди
+        PriorityQueue<Match> best = new PriorityQueue<>(Comparator.comparingInt(Match::exact)
+                .thenComparing(Comparator.comparingLong(Match::order).reversed()));
+        Scan scan = new Scan(rarest, terms, size, best);
+        Postings exact = words.get(rarest);
+        if (exact != null) {
+            scan.postings(exact, terms.length);
+        }
+        // в продолжениях слова rarest само оно совпадает не целиком
+        for (Postings postings : words.subMap(rarest, false, rarest + Character.MAX_VALUE, false).values()) {
+            if (scan.done(terms.length - 1)) {
+                break;
+            }
+            scan.postings(postings, terms.length - 1);
+        }
+        List<Match> matches = new ArrayList<>(best);
+        matches.sort(best.comparator().reversed());
+        return matches.stream().map(match -> new Book(match.entry().id(), match.entry().name())).toList();
+    }
+
+    /**
+     * Число книг со словами на префикс term (с повторами), подсчёт прекращается после bound
+     */
+    private long count(String term, long bound) {
+        long count = 0;
+        for (Postings postings : words.subMap(term, true, term + Character.MAX_VALUE, false).values()) {
+            count += postings.size;
+            if (count >= bound || count > maxCandidates) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return сколько слов запроса совпали со словами названия целиком или -1, если какое-то слово запроса
+     * не является префиксом ни одного слова названия
+     */
+    private static int exactMatches(Entry entry, String[] terms) {
+        int exact = 0;
+        for (String term : terms) {
+            int match = -1;
+            for (String word : entry.words) {
+                if (word.equals(term)) {
+                    match = 1;
+                    break;
+                }
+                if (word.startsWith(term)) {
+                    match = 0;
+                }
+            }
+            if (match < 0) {
+                return -1;
+            }
+            exact += match;
+        }
+        return exact;
+    }
+
+    private void add(long id, String name) {
+        String[] tokens = tokenize(name);
+        lock.writeLock().lock();
+        try {
+            if (books.containsKey(id)) {
+                return;
+            }
+            Entry entry = new Entry(id, name, tokens);
+            for (int i = 0; i < tokens.length; i++) {
+                Postings postings = words.computeIfAbsent(tokens[i], Postings::new);
+                postings.add(entry);
+                // одна строка слова на весь индекс
+                tokens[i] = postings.word;
+            }
+            books.put(id, entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = books.remove(id);
+            if (entry == null) {
+                return;
+            }
+            for (String word : entry.words()) {
+                Postings postings = words.get(word);
+                if (postings != null && postings.remove(id) && postings.size == 0) {
+                    words.remove(word);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Различные слова строки в нижнем регистре
+     */
+    static String[] tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                String token = text.substring(start, i).toLowerCase(Locale.ROOT);
+                if (!tokens.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens.toArray(String[]::new);
+    }
+
+    private record Entry(long id, String name, String[] words) {
+    }
+
+    /**
+     * @param order номер книги в порядке перебора
+     */
+    private record Match(Entry entry, int exact, long order) {
+    }
+
+    /**
+     * Состояние перебора кандидатов одного запроса
+     */
+    private final class Scan {
+
+        private final String rarest;
+        private final String[] terms;
+        private final int size;
+        private final PriorityQueue<Match> best;
+        private long scanned;
+
+        private Scan(String rarest, String[] terms, int size, PriorityQueue<Match> best) {
+            this.rarest = rarest;
+            this.terms = terms;
+            this.size = size;
+            this.best = best;
+        }
+
+        /**
+         * @param maxExact наибольшее число точных совпадений у книг этого слова
+         */
+        void postings(Postings postings, int maxExact) {
+            for (int i = 0; i < postings.size && !done(maxExact); i++) {
+                Entry entry = postings.entries[i];
+                if (seenBefore(entry, postings.word)) {
+                    continue;
+                }
+                scanned++;
+                int exact = exactMatches(entry, terms);
+                if (exact >= 0) {
+                    best.add(new Match(entry, exact, scanned));
+                    if (best.size() > size) {
+                        best.poll();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Дальше перебирать бессмысленно: просмотрено max-candidates книг или все отобранные уже имеют maxExact
+         * совпадений, а следующие книги с тем же числом совпадений ниже по порядку
+         */
+        boolean done(int maxExact) {
+            return scanned >= maxCandidates || best.size() == size && best.peek().exact() >= maxExact;
+        }
+
+        /**
+         * Книга уже попадалась по другому слову на тот же префикс: оно раньше по словарю (сам префикс - раньше всех)
+         */
+        private boolean seenBefore(Entry entry, String word) {
+            for (String other : entry.words()) {
+                if (other.startsWith(rarest) && other.compareTo(word) < 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Книги, в названии которых есть слово word, по возрастанию id
+     */
+    private static final class Postings {
+
+        private final String word;
+        private Entry[] entries = new Entry[1];
+        private int size;
+
+        private Postings(String word) {
+            this.word = word;
+        }
+
+        void add(Entry entry) {
+            // id новых книг растут, поэтому обычно это добавление в конец
+            int index = size == 0 || entries[size - 1].id() < entry.id() ? -size - 1 : indexOf(entry.id());
+            if (index >= 0) {
+                return;
+            }
+            int at = -index - 1;
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            System.arraycopy(entries, at, entries, at + 1, size - at);
+            entries[at] = entry;
+            size++;
+        }
+
+        boolean remove(long id) {
+            int index = indexOf(id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(entries, index + 1, entries, index, size - index - 1);
+            entries[--size] = null;
+            return true;
+        }
+
+        /**
+         * Как {@link Arrays#binarySearch(long[], long)}: позиция id или -(точка вставки) - 1
+         */
+        private int indexOf(long id) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midId = entries[mid].id();
+                if (midId < id) {
+                    low = mid + 1;
+                } else if (midId > id) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -low - 1;
+        }
+    }
+}
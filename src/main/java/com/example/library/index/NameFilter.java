@@ -0,0 +1,75 @@
+package com.example.library.index;
+
+import com.example.library.model.Book;
+import com.example.library.model.Reader;
+import com.example.library.repo.EntityChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Фильтры Блума по названиям книг и именам читателей, позволяющие проверить уникальность имени без запроса в БД.
+ * Заполняются из БД при старте, до запуска веб-сервера, и пополняются при каждой записи сущности через JPA.
+ * Удалённые имена из фильтра не убираются - для них просто выполняется обычная проверка в БД.
+ * Окончательную уникальность гарантирует уникальный индекс в БД
+ */
+@Slf4j
+@Component
+public class NameFilter implements SmartInitializingSingleton {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BloomFilter bookNames;
+    private final BloomFilter readerNames;
+
+    private volatile boolean warmedUp;
+
+    public NameFilter(JdbcTemplate jdbcTemplate,
+                      @Value("${application.name-filter.expected-insertions:1000000}") long expectedInsertions,
+                      @Value("${application.name-filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.bookNames = new BloomFilter(expectedInsertions, falsePositiveRate);
+        this.readerNames = new BloomFilter(expectedInsertions, falsePositiveRate);
+    }
+
+    /**
+     * @return false, если книги с таким названием точно нет; true - если проверка в БД нужна
+     */
+    public boolean mightContainBook(String name) {
+        return name == null || !warmedUp || bookNames.mightContain(name);
+    }
+
+    /**
+     * @return false, если читателя с таким именем точно нет; true - если проверка в БД нужна
+     */
+    public boolean mightContainReader(String name) {
+        return name == null || !warmedUp || readerNames.mightContain(name);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        long start = System.nanoTime();
+        jdbcTemplate.query("select name from books where name is not null", rs -> {
+            bookNames.put(rs.getString(1));
+        });
+        jdbcTemplate.query("select name from readers where name is not null", rs -> {
+            readerNames.put(rs.getString(1));
+        });
+        warmedUp = true;
+        log.info("Фильтры имён заполнены за {} мс", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @EventListener
+    public void onEntityChanged(EntityChangedEvent event) {
+        if (event.type() == EntityChangedEvent.Type.REMOVED) {
+            return;
+        }
+        if (event.entity() instanceof Book book && book.getName() != null) {
+            bookNames.put(book.getName());
+        } else if (event.entity() instanceof Reader reader && reader.getName() != null) {
+            readerNames.put(reader.getName());
+        }
+    }
+}
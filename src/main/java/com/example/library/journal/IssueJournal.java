@@ -0,0 +1,518 @@
+package com.example.library.journal;
+
+import com.example.library.model.Issue;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Журнал выдач и возвратов с отложенной записью в БД (application.journal.enabled=true).
+ * <p>
+ * Запись добавляется в локальный файл, и вызывающий поток ждёт только fsync журнала. Записи, накопившиеся
+ * за время предыдущего fsync, пишутся и фиксируются одной группой. Отдельный поток переносит записи из журнала
+ * в таблицы issues и issue_history пакетами (по одной транзакции на пакет) и сохраняет в файл контрольной точки, до какого места
+ * журнал перенесён. При старте непереносённая часть журнала применяется к БД до начала обработки запросов.
+ * <p>
+ * Пока запись не перенесена, её состояние хранится в памяти: {@link #find}, {@link #readerOpenDelta} и
+ * {@link #bookOpenDelta} вместе с запросом в БД внутри {@link #consistentRead} дают точное состояние выдач.
+ * Списки, история читателя и выгрузка читают только БД и видят выдачи с задержкой переноса
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "application.journal.enabled", havingValue = "true")
+public class IssueJournal implements SmartInitializingSingleton, DisposableBean {
+
+    private static final int MAX_GROUP = 4096;
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+    private static final Duration RETRY_INTERVAL = Duration.ofSeconds(1);
+
+    private static final String MERGE_ISSUE = "merge into issues (id, book_id, reader_id, issued_at) "
+            + "key (id) values (?, ?, ?, ?)";
+    private static final String MERGE_RETURNED = "merge into issue_history (id, book_id, reader_id, issued_at, returned_at) "
+            + "key (id) values (?, ?, ?, ?, ?)";
+    // запись о возврате не хранит дату выдачи: она берётся из строки в issues
+    private static final String MOVE_RETURNED = "merge into issue_history (id, book_id, reader_id, issued_at, returned_at) "
+            + "key (id) select id, book_id, reader_id, issued_at, ? from issues where id = ?";
+    private static final String DELETE_OPEN = "delete from issues where id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Path path;
+    private final Path checkpointPath;
+    private final int applyBatchSize;
+    private final long maxSize;
+
+    private final BlockingQueue<Append> appends = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Written> written = new LinkedBlockingQueue<>();
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    // суммы openDelta ожидающих выдач по читателям и книгам, меняются вместе с pending; нулевые суммы удаляются
+    private final Map<Long, Long> readerDeltas = new ConcurrentHashMap<>();
+    private final Map<Long, Long> bookDeltas = new ConcurrentHashMap<>();
+    private final ReadWriteLock applyLock = new ReentrantReadWriteLock();
+    private final Object appliedMonitor = new Object();
+    private final Object fileLock = new Object();
+
+    private FileChannel channel;
+    private FileChannel checkpoint;
+    private long sequence;
+    private long writtenOffset;
+    private volatile long appliedSequence;
+    private volatile IOException failure;
+    private volatile boolean running;
+    private boolean recovered;
+    private Thread writer;
+    private Thread applier;
+
+    public IssueJournal(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                        @Value("${application.journal.path:data/issues.journal}") Path path,
+                        @Value("${application.journal.apply-batch-size:500}") int applyBatchSize,
+                        @Value("${application.journal.max-size:64MB}") DataSize maxSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.path = path;
+        this.checkpointPath = path.resolveSibling(path.getFileName() + ".checkpoint");
+        this.applyBatchSize = applyBatchSize;
+        this.maxSize = maxSize.toBytes();
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        recover();
+    }
+
+    /**
+     * Восстановление: выполняется один раз после создания всех бинов (схема БД уже создана), до запуска веб-сервера.
+     * Компоненты, которые при старте считывают выдачи из БД, вызывают его сами: порядок вызова
+     * afterSingletonsInstantiated у разных бинов не задан
+     */
+    public synchronized void recover() {
+        if (recovered) {
+            return;
+        }
+        recovered = true;
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            checkpoint = FileChannel.open(checkpointPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            List<JournalRecord> records = readFrom(readCheckpoint());
+            for (int from = 0; from < records.size(); from += applyBatchSize) {
+                apply(records.subList(from, Math.min(records.size(), from + applyBatchSize)));
+            }
+            channel.truncate(0);
+            channel.force(true);
+            writeCheckpoint(0);
+            log.info("Журнал выдач {}: при старте применено записей {}", path.toAbsolutePath(), records.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось восстановить журнал выдач " + path, e);
+        }
+        running = true;
+        writer = start("issue-journal-writer", this::writeLoop);
+        applier = start("issue-journal-applier", this::applyLoop);
+    }
+
+    /**
+     * Записывает выдачу в журнал и возвращается после fsync
+     */
+    public void issued(Issue issue) {
+        append(JournalRecord.issued(issue), issue, false);
+    }
+
+    /**
+     * Записывает возврат открытой выдачи в журнал и возвращается после fsync
+     */
+    public void returned(Issue issue) {
+        append(JournalRecord.returned(issue), issue, true);
+    }
+
+    /**
+     * Выдача, изменения которой ещё не перенесены в БД
+     */
+    public Optional<Issue> find(long issueId) {
+        Pending entry = pending.get(issueId);
+        return entry == null ? Optional.empty() : Optional.of(copy(entry.issue));
+    }
+
+    /**
+     * На сколько количество книг на руках у читателя больше, чем в БД
+     */
+    public long readerOpenDelta(long readerId) {
+        return readerDeltas.getOrDefault(readerId, 0L);
+    }
+
+    /**
+     * На сколько количество открытых выдач книги больше, чем в БД
+     */
+    public long bookOpenDelta(long bookId) {
+        return bookDeltas.getOrDefault(bookId, 0L);
+    }
+
+    /**
+     * Запрос в БД и чтение состояния журнала без переноса пакета между ними
+     */
+    public <T> T consistentRead(Supplier<T> read) {
+        applyLock.readLock().lock();
+        try {
+            return read.get();
+        } finally {
+            applyLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ждёт переноса в БД всех записей, добавленных до вызова
+     */
+    public void awaitApplied() {
+        long target;
+        synchronized (appends) {
+            target = sequence;
+        }
+        synchronized (appliedMonitor) {
+            while (appliedSequence < target) {
+                checkFailure();
+                try {
+                    appliedMonitor.wait(POLL_INTERVAL.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Ожидание переноса журнала выдач прервано", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (!running) {
+            return;
+        }
+        running = false;
+        writer.join();
+        applier.join();
+        channel.close();
+        checkpoint.close();
+    }
+
+    private void append(JournalRecord record, Issue state, boolean openInDb) {
+        checkFailure();
+        if (!running) {
+            throw new IllegalStateException("Журнал выдач закрыт");
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        synchronized (appends) {
+            long seq = ++sequence;
+            pending.compute(record.issueId(), (id, entry) -> {
+                Pending updated = entry == null ? new Pending(openInDb) : entry;
+                long before = entry == null ? 0 : entry.openDelta();
+                updated.issue = copy(state);
+                updated.sequence = seq;
+                addOpenDelta(updated.issue, updated.openDelta() - before);
+                return updated;
+            });
+            appends.add(new Append(record, seq, done));
+        }
+        try {
+            done.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Не удалось записать журнал выдач", e.getCause());
+        }
+    }
+
+    private void writeLoop() {
+        List<Append> group = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_GROUP * JournalRecord.SIZE);
+        while (running || !appends.isEmpty()) {
+            try {
+                Append first = appends.poll(POLL_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                appends.drainTo(group, MAX_GROUP - 1);
+                write(group, buffer);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void write(List<Append> group, ByteBuffer buffer) {
+        buffer.clear();
+        group.forEach(append -> append.record.writeTo(buffer));
+        buffer.flip();
+        long start;
+        try {
+            synchronized (fileLock) {
+                checkFailure();
+                start = writtenOffset;
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, writtenOffset + buffer.position());
+                }
+                channel.force(false);
+                writtenOffset += buffer.limit();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (failure == null) {
+                failure = e instanceof IOException io ? io : new IOException(e);
+                log.error("Журнал выдач {} недоступен, запись выдач остановлена", path, e);
+            }
+            group.forEach(append -> append.done.completeExceptionally(failure));
+            return;
+        }
+        for (int i = 0; i < group.size(); i++) {
+            Append append = group.get(i);
+            written.add(new Written(append.record, append.sequence, start + (long) (i + 1) * JournalRecord.SIZE));
+            append.done.complete(null);
+        }
+    }
+
+    private void applyLoop() {
+        List<Written> batch = new ArrayList<>();
+        while (running || !written.isEmpty()) {
+            try {
+                Written first = written.poll(POLL_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                written.drainTo(batch, applyBatchSize - 1);
+                applyWritten(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Перенос пакета в БД с повтором при ошибке: записи журнала не теряются и применяются по порядку
+     */
+    private void applyWritten(List<Written> batch) throws InterruptedException {
+        List<JournalRecord> records = batch.stream().map(Written::record).toList();
+        Written last = batch.get(batch.size() - 1);
+        while (true) {
+            applyLock.writeLock().lock();
+            try {
+                Map<Long, Boolean> openAfter = apply(records);
+                openAfter.forEach((issueId, open) -> pending.computeIfPresent(issueId, (id, entry) -> {
+                    long before = entry.openDelta();
+                    if (entry.sequence <= last.sequence) {
+                        addOpenDelta(entry.issue, -before);
+                        return null;
+                    }
+                    entry.openInDb = open;
+                    addOpenDelta(entry.issue, entry.openDelta() - before);
+                    return entry;
+                }));
+                break;
+            } catch (RuntimeException e) {
+                log.error("Не удалось перенести в БД {} записей журнала выдач, повтор через {}", records.size(), RETRY_INTERVAL, e);
+            } finally {
+                applyLock.writeLock().unlock();
+            }
+            Thread.sleep(RETRY_INTERVAL.toMillis());
+        }
+        synchronized (appliedMonitor) {
+            appliedSequence = last.sequence;
+            appliedMonitor.notifyAll();
+        }
+        try {
+            synchronized (fileLock) {
+                if (last.endOffset == writtenOffset && writtenOffset >= maxSize) {
+                    // всё записанное перенесено - журнал начинается заново. Контрольная точка 0 сохраняется до
+                    // усечения и под fileLock: иначе новые записи с начала файла могли бы быть подтверждены, пока
+                    // в контрольной точке старое смещение, и восстановление их пропустило бы. Если сохранить её
+                    // не удалось, журнал не усекается
+                    writeCheckpoint(0);
+                    channel.truncate(0);
+                    channel.force(true);
+                    writtenOffset = 0;
+                    return;
+                }
+            }
+            // смещения растут, а усекает журнал только этот поток, поэтому здесь fileLock не нужен
+            writeCheckpoint(last.endOffset);
+        } catch (IOException e) {
+            // без контрольной точки при восстановлении повторно применится уже перенесённая часть журнала
+            log.warn("Не удалось сохранить контрольную точку журнала выдач {}", checkpointPath, e);
+        }
+    }
+
+    /**
+     * Применяет записи по порядку одной транзакцией: выдачи - merge в issues, возвраты - перенос строки из issues
+     * в issue_history (выдача и возврат из одного пакета сразу пишутся в историю).
+     * Повторное применение тех же записей даёт тот же результат
+     *
+     * @return открыта ли каждая затронутая выдача после применения
+     */
+    private Map<Long, Boolean> apply(List<JournalRecord> records) {
+        Map<Long, Issue> issued = new LinkedHashMap<>();
+        Map<Long, Issue> returned = new LinkedHashMap<>();
+        Map<Long, Boolean> openAfter = new LinkedHashMap<>();
+        for (JournalRecord record : records) {
+            if (record.type() == JournalRecord.Type.ISSUED) {
+                issued.put(record.issueId(), new Issue(record.issueId(), record.bookId(), record.readerId(), record.time()));
+                returned.remove(record.issueId());
+                openAfter.put(record.issueId(), true);
+            } else {
+                Issue issue = issued.get(record.issueId());
+                if (issue != null) {
+                    issue.setReturned_at(record.time());
+                } else {
+                    Issue update = new Issue(record.issueId(), record.bookId(), record.readerId(), null);
+                    update.setReturned_at(record.time());
+                    returned.put(record.issueId(), update);
+                }
+                openAfter.put(record.issueId(), false);
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(MERGE_ISSUE, issued.values().stream()
+                    .filter(issue -> issue.getReturned_at() == null)
+                    .map(issue -> new Object[]{issue.getId(), issue.getBookId(), issue.getReaderId(),
+                            Timestamp.valueOf(issue.getIssued_at())})
+                    .toList());
+            jdbcTemplate.batchUpdate(MERGE_RETURNED, issued.values().stream()
+                    .filter(issue -> issue.getReturned_at() != null)
+                    .map(issue -> new Object[]{issue.getId(), issue.getBookId(), issue.getReaderId(),
+                            Timestamp.valueOf(issue.getIssued_at()), timestamp(issue)})
+                    .toList());
+            jdbcTemplate.batchUpdate(MOVE_RETURNED, returned.values().stream()
+                    .map(issue -> new Object[]{timestamp(issue), issue.getId()})
+                    .toList());
+            jdbcTemplate.batchUpdate(DELETE_OPEN, openAfter.entrySet().stream()
+                    .filter(entry -> !entry.getValue())
+                    .map(entry -> new Object[]{entry.getKey()})
+                    .toList());
+        });
+        return openAfter;
+    }
+
+    /**
+     * Вызывается внутри compute по выдаче в pending, поэтому изменения одной выдачи учитываются по порядку
+     */
+    private void addOpenDelta(Issue issue, long delta) {
+        if (delta != 0) {
+            readerDeltas.merge(issue.getReaderId(), delta, IssueJournal::sumOrRemove);
+            bookDeltas.merge(issue.getBookId(), delta, IssueJournal::sumOrRemove);
+        }
+    }
+
+    private List<JournalRecord> readFrom(long offset) throws IOException {
+        long size = channel.size();
+        List<JournalRecord> records = new ArrayList<>();
+        if (offset >= size) {
+            return records;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - offset, Integer.MAX_VALUE - 8));
+        while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) >= 0) {
+            // читаем до конца файла
+        }
+        buffer.flip();
+        for (JournalRecord record = JournalRecord.readFrom(buffer); record != null; record = JournalRecord.readFrom(buffer)) {
+            records.add(record);
+        }
+        if (buffer.hasRemaining()) {
+            log.warn("Журнал выдач {}: отброшен недописанный хвост {} байт", path, buffer.remaining());
+        }
+        return records;
+    }
+
+    private long readCheckpoint() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        checkpoint.read(buffer, 0);
+        return buffer.position() == Long.BYTES ? buffer.flip().getLong() : 0;
+    }
+
+    private void writeCheckpoint(long offset) throws IOException {
+        checkpoint.write(ByteBuffer.allocate(Long.BYTES).putLong(offset).flip(), 0);
+        checkpoint.force(false);
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("Журнал выдач недоступен", failure);
+        }
+    }
+
+    private static Thread start(String name, Runnable loop) {
+        Thread thread = new Thread(loop, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static Long sumOrRemove(Long current, Long delta) {
+        long sum = current + delta;
+        return sum == 0 ? null : sum;
+    }
+
+    private static Timestamp timestamp(Issue issue) {
+        return issue.getReturned_at() == null ? null : Timestamp.valueOf(issue.getReturned_at());
+    }
+
+    private static Issue copy(Issue issue) {
+        Issue copy = new Issue(issue.getId(), issue.getBookId(), issue.getReaderId(), issue.getIssued_at());
+        copy.setReturned_at(issue.getReturned_at());
+        return copy;
+    }
+
+    private record Append(JournalRecord record, long sequence, CompletableFuture<Void> done) {
+    }
+
+    private record Written(JournalRecord record, long sequence, long endOffset) {
+    }
+
+    /**
+     * Последнее состояние выдачи, не перенесённое в БД, и открыта ли она в БД сейчас
+     */
+    private static final class Pending {
+
+        private volatile Issue issue;
+        private volatile long sequence;
+        private volatile boolean openInDb;
+
+        Pending(boolean openInDb) {
+            this.openInDb = openInDb;
+        }
+
+        long openDelta() {
+            return (issue.getReturned_at() == null ? 1 : 0) - (openInDb ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.library.journal;
+
+import com.example.library.model.Issue;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.zip.CRC32C;
+
+/**
+ * Запись журнала: выдача или возврат. В файле - фиксированные {@value #SIZE} байт с контрольной суммой,
+ * по которой при восстановлении отбрасывается недописанный хвост
+ */
+record JournalRecord(Type type, long issueId, long bookId, long readerId, LocalDateTime time) {
+
+    enum Type {
+        ISSUED, RETURNED
+    }
+
+    static final int SIZE = 1 + 8 * 4 + 4;
+
+    static JournalRecord issued(Issue issue) {
+        return new JournalRecord(Type.ISSUED, issue.getId(), issue.getBookId(), issue.getReaderId(), issue.getIssued_at());
+    }
+
+    static JournalRecord returned(Issue issue) {
+        return new JournalRecord(Type.RETURNED, issue.getId(), issue.getBookId(), issue.getReaderId(), issue.getReturned_at());
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.put((byte) type.ordinal())
+                .putLong(issueId)
+                .putLong(bookId)
+                .putLong(readerId)
+                .putLong(toMicros(time));
+        buffer.putInt(checksum(buffer, start));
+    }
+
+    /**
+     * @return запись или null, если в буфере нет целой записи с верной контрольной суммой
+     */
+    static JournalRecord readFrom(ByteBuffer buffer) {
+        if (buffer.remaining() < SIZE) {
+            return null;
+        }
+        int start = buffer.position();
+        int type = buffer.get();
+        long issueId = buffer.getLong();
+        long bookId = buffer.getLong();
+        long readerId = buffer.getLong();
+        long micros = buffer.getLong();
+        if (buffer.getInt() != checksum(buffer, start) || type < 0 || type >= Type.values().length) {
+            return null;
+        }
+        return new JournalRecord(Type.values()[type], issueId, bookId, readerId, fromMicros(micros));
+    }
+
+    private static int checksum(ByteBuffer buffer, int start) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(start).limit(start + SIZE - 4));
+        return (int) crc.getValue();
+    }
+
+    private static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+}
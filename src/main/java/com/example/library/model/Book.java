@@ -1,24 +1,26 @@
 package com.example.library.model;
 
+import com.example.library.repo.EntityChangeListener;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 
 @Entity
-@Table(name = "books")
+@EntityListeners(EntityChangeListener.class)
+@Table(name = "books", uniqueConstraints = @UniqueConstraint(name = "uk_books_name", columnNames = "name"))
 @Data
 @RequiredArgsConstructor
 @NoArgsConstructor(force = true)
 @Schema(name = "Книга")
 public class Book {
 
-    public static long sequence = 1L;
-
     @Id
     @Schema(name = "Идентификатор")
     private final long id;
@@ -26,8 +28,4 @@ public class Book {
     @Column(name = "name")
     @Schema(name = "Название", minLength = 1)
     private final String name;
-
-    public Book(String name) {
-        this(sequence++, name);
-    }
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.example.library.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+/**
+ * Выдачи и возвраты книги за всё время (в БД не хранится)
+ */
+@Value
+@Schema(name = "Оборот книги")
+public class BookCirculation {
+
+    @Schema(name = "Идентификатор книги")
+    long bookId;
+
+    @Schema(name = "Количество выдач")
+    long issued;
+
+    @Schema(name = "Количество возвратов")
+    long returned;
+}
@@ -0,0 +1,21 @@
+package com.example.library.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+/**
+ * Оценка числа выдач книги за период (в БД не хранится): точное число лежит в [issues - error, issues]
+ */
+@Value
+@Schema(name = "Популярность книги")
+public class BookPopularity {
+
+    @Schema(name = "Идентификатор книги")
+    long bookId;
+
+    @Schema(name = "Оценка количества выдач сверху")
+    long issues;
+
+    @Schema(name = "Максимальная погрешность оценки")
+    long error;
+}
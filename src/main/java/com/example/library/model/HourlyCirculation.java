@@ -0,0 +1,23 @@
+package com.example.library.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Выдачи и возвраты за один час (в БД не хранится)
+ */
+@Value
+@Schema(name = "Выдачи за час")
+public class HourlyCirculation {
+
+    @Schema(name = "Начало часа")
+    LocalDateTime hour;
+
+    @Schema(name = "Количество выдач")
+    long issued;
+
+    @Schema(name = "Количество возвратов")
+    long returned;
+}
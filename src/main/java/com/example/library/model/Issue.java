@@ -4,7 +4,9 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
@@ -12,18 +14,20 @@ import lombok.RequiredArgsConstructor;
 import java.time.LocalDateTime;
 
 /**
- * Запись о факте выдачи книги (в БД)
+ * Запись о факте выдачи книги. В таблице issues хранятся только открытые выдачи (книга на руках);
+ * при возврате строка переносится в историю {@link ReturnedIssue}
  */
 @Entity
-@Table(name = "issues")
+@Table(name = "issues", indexes = {
+        @Index(name = "idx_issues_reader_id", columnList = "reader_id"),
+        @Index(name = "idx_issues_book_id", columnList = "book_id")
+})
 @Data
 @RequiredArgsConstructor
 @NoArgsConstructor(force = true)
 @Schema(name = "Выдача")
 public class Issue {
 
-    public static long sequence = 1L;
-
     @Id
     @Schema(name = "Идентификатор выдачи")
     private final long id;
@@ -40,12 +44,13 @@ public class Issue {
     @Schema(name = "Дата выдачи")
     private final LocalDateTime issued_at;
 
-    @Column(name = "returned_at")
+    // у строк issues всегда null: заполняется при возврате и у выдач, прочитанных из истории
+    @Transient
     @Schema(name = "Дата возврата")
     private LocalDateTime returned_at;
 
-    public Issue(long bookId, long readerId) {
-        this.id = sequence++;
+    public Issue(long id, long bookId, long readerId) {
+        this.id = id;
         this.bookId = bookId;
         this.readerId = readerId;
         this.issued_at = LocalDateTime.now();
@@ -0,0 +1,29 @@
+package com.example.library.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Просроченная выдача: книга не возвращена к сроку due_at (в БД не хранится)
+ */
+@Value
+@Schema(name = "Просроченная выдача")
+public class OverdueLoan {
+
+    @Schema(name = "Идентификатор выдачи")
+    long id;
+
+    @Schema(name = "Идентификатор книги")
+    long bookId;
+
+    @Schema(name = "Идентификатор читателя")
+    long readerId;
+
+    @Schema(name = "Дата выдачи")
+    LocalDateTime issued_at;
+
+    @Schema(name = "Срок возврата")
+    LocalDateTime due_at;
+}
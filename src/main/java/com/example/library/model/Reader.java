@@ -1,24 +1,26 @@
 package com.example.library.model;
 
+import com.example.library.repo.EntityChangeListener;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 
 @Entity
-@Table(name = "readers")
+@EntityListeners(EntityChangeListener.class)
+@Table(name = "readers", uniqueConstraints = @UniqueConstraint(name = "uk_readers_name", columnNames = "name"))
 @Data
 @RequiredArgsConstructor
 @NoArgsConstructor(force = true)
 @Schema(name = "Читатель")
 public class Reader {
 
-    public static long sequence = 1L;
-
     @Id
     @Schema(name = "Идентификатор")
     private final long id;
@@ -26,8 +28,4 @@ public class Reader {
     @Column(name = "name")
     @Schema(name = "Имя", minLength = 1)
     private final String name;
-
-    public Reader(String name) {
-        this(sequence++, name);
-    }
 }
\ No newline at end of file
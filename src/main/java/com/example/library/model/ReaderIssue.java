@@ -0,0 +1,29 @@
+package com.example.library.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Выдача книги читателю вместе с названием книги (проекция, в БД не хранится)
+ */
+@Value
+@Schema(name = "Выдача читателю")
+public class ReaderIssue {
+
+    @Schema(name = "Идентификатор выдачи")
+    long id;
+
+    @Schema(name = "Идентификатор книги")
+    long bookId;
+
+    @Schema(name = "Название книги")
+    String bookName;
+
+    @Schema(name = "Дата выдачи")
+    LocalDateTime issued_at;
+
+    @Schema(name = "Дата возврата")
+    LocalDateTime returned_at;
+}
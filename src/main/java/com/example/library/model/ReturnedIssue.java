@@ -0,0 +1,56 @@
+package com.example.library.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.time.LocalDateTime;
+
+/**
+ * Завершённая выдача в истории возвратов (в БД). Строки только добавляются: выдача попадает сюда
+ * из issues при возврате и больше не меняется
+ */
+@Entity
+@Immutable
+@Table(name = "issue_history", indexes = {
+        // история выдач читателя от новых к старым: H2 читает первые limit записей индекса без сортировки,
+        // если порядок в запросе совпадает с порядком индекса по всем столбцам
+        @Index(name = "idx_issue_history_reader_id", columnList = "reader_id desc, id desc")
+})
+@Data
+@RequiredArgsConstructor
+@NoArgsConstructor(force = true)
+public class ReturnedIssue {
+
+    @Id
+    private final long id;
+
+    @Column(name = "book_id")
+    private final long bookId;
+
+    @Column(name = "reader_id")
+    private final long readerId;
+
+    @Column(name = "issued_at")
+    private final LocalDateTime issued_at;
+
+    @Column(name = "returned_at")
+    private final LocalDateTime returned_at;
+
+    public static ReturnedIssue of(Issue issue) {
+        return new ReturnedIssue(issue.getId(), issue.getBookId(), issue.getReaderId(),
+                issue.getIssued_at(), issue.getReturned_at());
+    }
+
+    public Issue toIssue() {
+        Issue issue = new Issue(id, bookId, readerId, issued_at);
+        issue.setReturned_at(returned_at);
+        return issue;
+    }
+}
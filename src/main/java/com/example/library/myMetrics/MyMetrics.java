@@ -1,54 +1,111 @@
 package com.example.library.myMetrics;
 
-import com.example.library.api.IssueRequest;
-import com.example.library.model.Issue;
-import com.example.library.service.IssueService;
+import com.example.library.journal.IssueJournal;
+import com.example.library.repo.IssueRepository;
+import com.example.library.service.IssueDeniedEvent;
+import com.example.library.service.IssueEvent;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
-import io.swagger.v3.oas.annotations.Operation;
-import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
-import org.springframework.web.bind.annotation.PostMapping;
-import java.util.NoSuchElementException;
 
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Метрики выдачи книг. Обновляются по событиям IssueService, поэтому при сборе метрик запросов в БД нет:
+ * <ul>
+ *     <li>issued_books_count - успешные выдачи (outcome=created)</li>
+ *     <li>denied_requests_count - отказы в выдаче с тегом outcome=not_found|limit_exceeded|book_unavailable</li>
+ *     <li>returned_books_count - возвраты</li>
+ *     <li>open_loans - книги на руках у читателей сейчас</li>
+ *     <li>readers_at_limit - читатели, у которых на руках максимально разрешенное количество книг</li>
+ * </ul>
+ * Время выдачи публикуется аспектом @Timer как library.method.timer{class="IssueService", method="issue"}
+ */
 @Slf4j
 @Component
-public class MyMetrics {
-
-    @Autowired
-    private IssueService service;
-    private final Counter issuedBooksCount ;
-    private final Counter deniedRequestsCount ;
-    public MyMetrics(MeterRegistry meterRegistry) {
-        issuedBooksCount = meterRegistry.counter("issued_books_count");
-        deniedRequestsCount = meterRegistry.counter("denied_requests_count");
+public class MyMetrics implements SmartInitializingSingleton {
+
+    private final IssueRepository issueRepository;
+    private final Optional<IssueJournal> journal;
+    private final long booksLimit;
+
+    private final Counter issuedBooksCount;
+    private final Map<IssueDeniedEvent.Reason, Counter> deniedRequestsCount = new EnumMap<>(IssueDeniedEvent.Reason.class);
+    private final Counter returnedBooksCount;
+
+    private final AtomicLong openLoans = new AtomicLong();
+    private final AtomicLong readersAtLimit = new AtomicLong();
+    private final Map<Long, Long> openLoansByReader = new ConcurrentHashMap<>();
+
+    public MyMetrics(MeterRegistry meterRegistry, IssueRepository issueRepository, Optional<IssueJournal> journal,
+                     @Value("${application.max-allowed-books:1}") long booksLimit) {
+        this.issueRepository = issueRepository;
+        this.journal = journal;
+        this.booksLimit = booksLimit;
+        issuedBooksCount = Counter.builder("issued_books_count")
+                .tag("outcome", "created")
+                .register(meterRegistry);
+        for (IssueDeniedEvent.Reason reason : IssueDeniedEvent.Reason.values()) {
+            deniedRequestsCount.put(reason, Counter.builder("denied_requests_count")
+                    .tag("outcome", reason.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+        returnedBooksCount = meterRegistry.counter("returned_books_count");
+        Gauge.builder("open_loans", openLoans, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("readers_at_limit", readersAtLimit, AtomicLong::get).register(meterRegistry);
     }
 
-    // POST /issue
-    @PostMapping
-    @Operation(summary = "issue book", description = "Регистрирует выдачу книги читателю")
-    public ResponseEntity<Issue> issueBook(@RequestBody IssueRequest request) {
-        log.info("Получен запрос на выдачу: readerId = {}, bookId = {}", request.getReaderId(), request.getBookId());
+    /**
+     * Начальные значения датчиков считываются из БД один раз при старте, до запуска веб-сервера: выдачи,
+     * сделанные позже, приходят только событиями и не учитываются дважды. Дальше датчики поддерживаются по событиям
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        journal.ifPresent(IssueJournal::recover);
+        for (IssueRepository.ReaderOpenIssues it : issueRepository.countOpenByReader()) {
+            changeOpenLoans(it.getReaderId(), it.getOpenIssues());
+        }
+        log.info("Метрики выдач: книг на руках {}, читателей на лимите {}", openLoans.get(), readersAtLimit.get());
+    }
 
-        final Issue issue;
-        try {
-            issue = service.issue(request);
-            // Успешная выдача книги
+    @EventListener
+    public void onIssue(IssueEvent event) {
+        if (event.type() == IssueEvent.Type.ISSUED) {
             issuedBooksCount.increment();
-        } catch (NoSuchElementException e) {
-            // Ошибка - ресурс не найден
-            deniedRequestsCount.increment();
-            return ResponseEntity.notFound().build();
-        } catch (RuntimeException e) {
-            // Ошибка - превышен лимит книг у читателя или другая причина
-            deniedRequestsCount.increment();
-            return ResponseEntity.status(HttpStatus.CONFLICT).body(null);
+            changeOpenLoans(event.issue().getReaderId(), 1);
+        } else {
+            returnedBooksCount.increment();
+            changeOpenLoans(event.issue().getReaderId(), -1);
         }
-        return ResponseEntity.status(HttpStatus.CREATED).body(issue);
+    }
+
+    @EventListener
+    public void onDenied(IssueDeniedEvent event) {
+        deniedRequestsCount.get(event.reason()).increment();
+    }
+
+    private void changeOpenLoans(long readerId, long delta) {
+        openLoans.addAndGet(delta);
+        openLoansByReader.compute(readerId, (id, current) -> {
+            long before = current == null ? 0 : current;
+            // возврат может прийти раньше события о выдаче, поэтому временно счётчик бывает отрицательным
+            long after = before + delta;
+            if (before < booksLimit && after >= booksLimit) {
+                readersAtLimit.incrementAndGet();
+            } else if (before >= booksLimit && after < booksLimit) {
+                readersAtLimit.decrementAndGet();
+            }
+            return after == 0 ? null : after;
+        });
     }
 }
@@ -0,0 +1,193 @@
+package com.example.library.overdue;
+
+import com.example.library.journal.IssueJournal;
+import com.example.library.model.Issue;
+import com.example.library.model.OverdueLoan;
+import com.example.library.repo.IssueRepository;
+import com.example.library.service.IssueEvent;
+import com.example.library.service.KeysetPage;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Поиск просроченных выдач без запросов в БД. Открытые выдачи лежат в {@link TimingWheel} со сроком
+ * issued_at + loan-period и обновляются по событиям IssueService. Раз в tick колесо продвигается до текущего
+ * времени: просроченными становятся только выдачи, срок которых наступил за этот шаг, и для каждой публикуется
+ * {@link OverdueEvent}. Стоимость шага пропорциональна числу наступивших сроков, а не размеру таблицы issues.
+ * <p>
+ * Колесо меняет один поток за раз: слушатель кладёт событие в очередь и применяет накопившиеся события, если
+ * блокировка свободна, поэтому запросы выдачи не ждут друг друга. Шаг колеса и чтение списка сначала применяют очередь.
+ * <p>
+ * Метрика overdue_loans - просроченные и всё ещё не возвращённые выдачи
+ */
+@Slf4j
+@Component
+public class OverdueDetector implements SmartInitializingSingleton {
+
+    private final IssueRepository issueRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Optional<IssueJournal> journal;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Duration loanPeriod;
+    private final long tickMillis;
+
+    private final TimingWheel<OverdueLoan> wheel;
+    private final NavigableMap<Long, OverdueLoan> overdue = new ConcurrentSkipListMap<>();
+    private final Queue<IssueEvent> events = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Возвраты, опередившие событие о выдаче: события публикуются после снятия блокировок читателя и книги,
+     * и возврат из другого запроса может прийти раньше. Идентификатор удаляется, когда приходит сама выдача
+     */
+    private final Set<Long> returnedBeforeIssued = new HashSet<>();
+
+    public OverdueDetector(IssueRepository issueRepository, TransactionTemplate transactionTemplate,
+                           Optional<IssueJournal> journal, ApplicationEventPublisher eventPublisher,
+                           MeterRegistry meterRegistry,
+                           @Value("${application.overdue.loan-period:14d}") Duration loanPeriod,
+                           @Value("${application.overdue.tick:1s}") Duration tick) {
+        this.issueRepository = issueRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.journal = journal;
+        this.eventPublisher = eventPublisher;
+        this.loanPeriod = loanPeriod;
+        this.tickMillis = tick.toMillis();
+        wheel = new TimingWheel<>(tickOf(LocalDateTime.now()));
+        Gauge.builder("overdue_loans", overdue, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Открытые выдачи считываются из БД один раз при старте, до запуска веб-сервера: выдачи, сделанные позже,
+     * приходят только событиями. Дальше колесо поддерживается по событиям
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        // выдачи из журнала, не перенесённые в БД до остановки, тоже должны попасть в колесо
+        journal.ifPresent(IssueJournal::recover);
+        lock.lock();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<Issue> issues = issueRepository.streamAll()) {
+                    issues.forEach(this::opened);
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+        log.info("Просроченные выдачи: ожидают срока {}", wheel.size());
+    }
+
+    @EventListener
+    public void onIssue(IssueEvent event) {
+        events.add(event);
+        if (lock.tryLock()) {
+            try {
+                applyEvents();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // @Scheduled понимает только миллисекунды и ISO-8601, а не запись вида 1s
+    @Scheduled(fixedRateString = "#{T(org.springframework.boot.convert.DurationStyle)"
+            + ".detectAndParse('${application.overdue.tick:1s}').toMillis()}")
+    public void tick() {
+        advance(LocalDateTime.now());
+    }
+
+    /**
+     * Отмечает просроченными выдачи со сроком до now и публикует о них события
+     *
+     * @return выдачи, ставшие просроченными на этом шаге
+     */
+    List<OverdueLoan> advance(LocalDateTime now) {
+        lock.lock();
+        try {
+            applyEvents();
+            List<OverdueLoan> expired = wheel.advance(tickOf(now));
+            for (OverdueLoan loan : expired) {
+                overdue.put(loan.getId(), loan);
+                eventPublisher.publishEvent(new OverdueEvent(loan));
+            }
+            if (!expired.isEmpty()) {
+                log.info("Новых просроченных выдач: {}, всего просрочено: {}", expired.size(), overdue.size());
+            }
+            return expired;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Страница просроченных невозвращённых выдач в порядке возрастания id
+     */
+    public KeysetPage<OverdueLoan> getOverdueLoans(long after, Integer limit) {
+        int size = KeysetPage.pageSize(limit);
+        // возвраты, ещё лежащие в очереди, не должны попасть в список
+        lock.lock();
+        try {
+            applyEvents();
+        } finally {
+            lock.unlock();
+        }
+        List<OverdueLoan> rows = overdue.tailMap(after, false).values().stream().limit(size + 1).toList();
+        return KeysetPage.of(rows, size, OverdueLoan::getId);
+    }
+
+    /**
+     * Применяет накопившиеся события, вызывается под lock. Событие, добавленное после выхода отсюда, применит
+     * следующий слушатель, шаг колеса или запрос списка
+     */
+    private void applyEvents() {
+        for (IssueEvent event = events.poll(); event != null; event = events.poll()) {
+            long issueId = event.issue().getId();
+            if (event.type() == IssueEvent.Type.ISSUED) {
+                if (!returnedBeforeIssued.remove(issueId)) {
+                    opened(event.issue());
+                }
+            } else if (!wheel.cancel(issueId) && overdue.remove(issueId) == null) {
+                returnedBeforeIssued.add(issueId);
+            }
+        }
+    }
+
+    private void opened(Issue issue) {
+        LocalDateTime dueAt = issue.getIssued_at().plus(loanPeriod);
+        OverdueLoan loan = new OverdueLoan(issue.getId(), issue.getBookId(), issue.getReaderId(),
+                issue.getIssued_at(), dueAt);
+        // срок округляется вверх до тика, чтобы выдача не стала просроченной раньше срока
+        wheel.schedule(issue.getId(), -Math.floorDiv(-epochMillis(dueAt), tickMillis), loan);
+    }
+
+    private long tickOf(LocalDateTime time) {
+        return Math.floorDiv(epochMillis(time), tickMillis);
+    }
+
+    private static long epochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
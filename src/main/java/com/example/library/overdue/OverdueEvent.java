@@ -0,0 +1,9 @@
+package com.example.library.overdue;
+
+import com.example.library.model.OverdueLoan;
+
+/**
+ * Событие о том, что выдача стала просроченной, публикуется {@link OverdueDetector} один раз на выдачу
+ */
+public record OverdueEvent(OverdueLoan loan) {
+}
@@ -0,0 +1,142 @@
+package com.example.library.overdue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Иерархическое колесо таймеров: таймер с ключом id срабатывает на тике deadline.
+ * <p>
+ * На каждом из LEVELS уровней SLOTS ячеек, ячейка уровня L покрывает SLOTS^L тиков. Таймер кладётся на самый нижний
+ * уровень, в пределах которого его срок ещё не наступил, и при продвижении колеса переносится на нижние уровни
+ * (не больше LEVELS - 1 раз). Добавление и отмена - O(1), продвижение на один тик - O(1) плюс число сработавших
+ * и перенесённых таймеров, поэтому стоимость не зависит от общего числа таймеров. Не потокобезопасно
+ */
+final class TimingWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    private final Map<Long, Timer<T>>[] slots;
+    private final Map<Long, Timer<T>> timers = new HashMap<>();
+    /**
+     * Таймеры, срок которых уже наступил: отдаются при следующем {@link #advance}
+     */
+    private Map<Long, Timer<T>> ready = new HashMap<>();
+    private long current;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long currentTick) {
+        this.current = currentTick;
+        slots = new Map[LEVELS * SLOTS];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new HashMap<>();
+        }
+    }
+
+    /**
+     * Ставит таймер (заменяя прежний с тем же id). Таймер с наступившим сроком сработает при следующем {@link #advance}
+     */
+    void schedule(long id, long deadline, T value) {
+        cancel(id);
+        Timer<T> timer = new Timer<>(id, deadline, value);
+        timers.put(id, timer);
+        place(timer);
+    }
+
+    boolean cancel(long id) {
+        Timer<T> timer = timers.remove(id);
+        if (timer == null) {
+            return false;
+        }
+        timer.slot.remove(id);
+        return true;
+    }
+
+    int size() {
+        return timers.size();
+    }
+
+    long currentTick() {
+        return current;
+    }
+
+    /**
+     * Продвигает колесо до тика tick включительно
+     *
+     * @return сработавшие таймеры
+     */
+    List<T> advance(long tick) {
+        while (current < tick) {
+            if (timers.size() == ready.size()) {
+                // ждущих таймеров нет - пустые тики можно не обходить
+                current = tick;
+                break;
+            }
+            current++;
+            // сначала переносятся таймеры с верхних уровней, чья ячейка началась на этом тике
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((current & ((1L << level * SLOT_BITS) - 1)) == 0) {
+                    cascade(level);
+                }
+            }
+            cascade(0);
+        }
+        List<T> fired = new ArrayList<>(ready.size());
+        for (Timer<T> timer : ready.values()) {
+            timers.remove(timer.id);
+            fired.add(timer.value);
+        }
+        ready = new HashMap<>();
+        return fired;
+    }
+
+    private void cascade(int level) {
+        int index = index(level, current);
+        Map<Long, Timer<T>> slot = slots[index];
+        if (slot.isEmpty()) {
+            return;
+        }
+        slots[index] = new HashMap<>();
+        slot.values().forEach(this::place);
+    }
+
+    private void place(Timer<T> timer) {
+        if (timer.deadline <= current) {
+            timer.slot = ready;
+        } else {
+            // нижний уровень, на котором срок и текущий тик попадают в одну ячейку уровня выше; срок дальше
+            // верхнего уровня кладётся в его ячейку по модулю и перекладывается, когда до неё дойдёт колесо
+            int level = 0;
+            while (level < LEVELS - 1 && block(level + 1, timer.deadline) != block(level + 1, current)) {
+                level++;
+            }
+            timer.slot = slots[index(level, timer.deadline)];
+        }
+        timer.slot.put(timer.id, timer);
+    }
+
+    private static long block(int level, long tick) {
+        return tick >>> level * SLOT_BITS;
+    }
+
+    private static int index(int level, long tick) {
+        return level * SLOTS + (int) (block(level, tick) & (SLOTS - 1));
+    }
+
+    private static final class Timer<T> {
+
+        private final long id;
+        private final long deadline;
+        private final T value;
+        private Map<Long, Timer<T>> slot;
+
+        private Timer(long id, long deadline, T value) {
+            this.id = id;
+            this.deadline = deadline;
+            this.value = value;
+        }
+    }
+}
@@ -1,12 +1,23 @@
 package com.example.library.repo;
 
 import com.example.library.model.Book;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface BookRepository extends JpaRepository<Book, Long> {
 
     Book findBookByName(String name);
 
+    @Query("select b.name from Book b where b.name in :names")
+    List<String> findExistingNames(@Param("names") Collection<String> names);
+
+    List<Book> findByIdGreaterThanOrderByIdAsc(long id, Limit limit);
+
 }
\ No newline at end of file
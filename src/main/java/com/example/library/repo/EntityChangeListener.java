@@ -0,0 +1,32 @@
+package com.example.library.repo;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+
+/**
+ * JPA-слушатель сущностей: публикует {@link EntityChangedEvent} при любой записи через JPA,
+ * в том числе в обход сервисов. Подключается к сущности через @EntityListeners
+ */
+@RequiredArgsConstructor
+public class EntityChangeListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    @PostPersist
+    public void onPersist(Object entity) {
+        eventPublisher.publishEvent(new EntityChangedEvent(entity, EntityChangedEvent.Type.PERSISTED));
+    }
+
+    @PostUpdate
+    public void onUpdate(Object entity) {
+        eventPublisher.publishEvent(new EntityChangedEvent(entity, EntityChangedEvent.Type.UPDATED));
+    }
+
+    @PostRemove
+    public void onRemove(Object entity) {
+        eventPublisher.publishEvent(new EntityChangedEvent(entity, EntityChangedEvent.Type.REMOVED));
+    }
+}
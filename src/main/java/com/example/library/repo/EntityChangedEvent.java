@@ -0,0 +1,13 @@
+package com.example.library.repo;
+
+/**
+ * Событие об изменении сущности в БД (публикуется из {@link EntityChangeListener})
+ */
+public record EntityChangedEvent(Object entity, Type type) {
+
+    public enum Type {
+        PERSISTED,
+        UPDATED,
+        REMOVED
+    }
+}
@@ -1,11 +1,87 @@
 package com.example.library.repo;
 
 import com.example.library.model.Issue;
+import com.example.library.model.ReaderIssue;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
 
 @Repository
 public interface IssueRepository extends JpaRepository<Issue, Long> {
 
-}
\ No newline at end of file
+    int STREAM_FETCH_SIZE = 500;
+
+    /**
+     * Количество книг на руках у читателя. В issues только открытые выдачи, а поиск идёт по индексу reader_id,
+     * поэтому время не зависит от размера истории возвратов
+     */
+    @Query("select count(i) from Issue i where i.readerId = :readerId")
+    long countOpenByReaderId(@Param("readerId") long readerId);
+
+    /**
+     * Находится ли книга сейчас на руках у какого-либо читателя
+     */
+    @Query("select count(i) > 0 from Issue i where i.bookId = :bookId")
+    boolean isBookIssued(@Param("bookId") long bookId);
+
+    /**
+     * Количество открытых выдач по каждому из читателей (читатели без открытых выдач в результат не попадают)
+     */
+    @Query("select i.readerId as readerId, count(i) as openIssues from Issue i " +
+            "where i.readerId in :readerIds group by i.readerId")
+    List<ReaderOpenIssues> countOpenByReaderIds(@Param("readerIds") Collection<Long> readerIds);
+
+    /**
+     * Количество открытых выдач по всем читателям, у которых есть книги на руках
+     */
+    @Query("select i.readerId as readerId, count(i) as openIssues from Issue i group by i.readerId")
+    List<ReaderOpenIssues> countOpenByReader();
+
+    /**
+     * Какие из книг сейчас на руках у читателей
+     */
+    @Query("select i.bookId from Issue i where i.bookId in :bookIds")
+    List<Long> findIssuedBookIds(@Param("bookIds") Collection<Long> bookIds);
+
+    List<Issue> findByIdGreaterThanOrderByIdAsc(long id, Limit limit);
+
+    /**
+     * Открытые выдачи читателя с id < before от новых к старым
+     */
+    @Query("select i from Issue i where i.readerId = :readerId and i.id < :before order by i.id desc")
+    List<Issue> findReaderIssuesBefore(@Param("readerId") long readerId, @Param("before") long before, Limit limit);
+
+    /**
+     * Открытые выдачи читателя вместе с названиями книг, от новых к старым
+     */
+    @Query("select new com.example.library.model.ReaderIssue(i.id, i.bookId, b.name, i.issued_at, " +
+            "cast(null as LocalDateTime)) from Issue i left join Book b on b.id = i.bookId " +
+            "where i.readerId = :readerId order by i.id desc")
+    List<ReaderIssue> findReaderIssues(@Param("readerId") long readerId, Limit limit);
+
+    /**
+     * Все открытые выдачи в порядке возрастания id, с выборкой из БД порциями по {@value #STREAM_FETCH_SIZE} записей.
+     * Поток должен быть закрыт и прочитан внутри транзакции
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+    @Query("select i from Issue i order by i.id")
+    Stream<Issue> streamAll();
+
+    interface ReaderOpenIssues {
+
+        long getReaderId();
+
+        long getOpenIssues();
+    }
+
+}
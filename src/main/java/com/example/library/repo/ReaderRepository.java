@@ -1,13 +1,24 @@
 package com.example.library.repo;
 
 import com.example.library.model.Reader;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 
 @Repository
 public interface ReaderRepository extends JpaRepository<Reader, Long> {
 
     Reader findReaderByName(String name);
 
+    @Query("select r.name from Reader r where r.name in :names")
+    List<String> findExistingNames(@Param("names") Collection<String> names);
+
+    List<Reader> findByIdGreaterThanOrderByIdAsc(long id, Limit limit);
+
 }
\ No newline at end of file
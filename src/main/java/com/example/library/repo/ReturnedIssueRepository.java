@@ -0,0 +1,56 @@
+package com.example.library.repo;
+
+import com.example.library.model.ReaderIssue;
+import com.example.library.model.ReturnedIssue;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * История возвратов (issue_history). Проверки при выдаче сюда не обращаются, только отчёты и история читателя
+ */
+@Repository
+public interface ReturnedIssueRepository extends JpaRepository<ReturnedIssue, Long> {
+
+    List<ReturnedIssue> findByIdGreaterThanOrderByIdAsc(long id, Limit limit);
+
+    /**
+     * Какие из выдач уже возвращены
+     */
+    @Query("select r.id from ReturnedIssue r where r.id in :ids")
+    List<Long> findReturnedIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Возвращённые выдачи читателя с id < before от новых к старым. Читаются только первые limit записей индекса
+     * (reader_id desc, id desc), поэтому время не зависит от длины истории читателя
+     */
+    @Query("select r from ReturnedIssue r where r.readerId = :readerId and r.id < :before " +
+            "order by r.readerId desc, r.id desc")
+    List<ReturnedIssue> findReaderIssuesBefore(@Param("readerId") long readerId, @Param("before") long before,
+                                               Limit limit);
+
+    /**
+     * Последние возвращённые выдачи читателя вместе с названиями книг одним запросом, от новых к старым
+     */
+    @Query("select new com.example.library.model.ReaderIssue(r.id, r.bookId, b.name, r.issued_at, r.returned_at) " +
+            "from ReturnedIssue r left join Book b on b.id = r.bookId where r.readerId = :readerId " +
+            "order by r.readerId desc, r.id desc")
+    List<ReaderIssue> findReaderIssues(@Param("readerId") long readerId, Limit limit);
+
+    /**
+     * Вся история в порядке возрастания id, с выборкой из БД порциями по {@value IssueRepository#STREAM_FETCH_SIZE}
+     * записей. Поток должен быть закрыт и прочитан внутри транзакции
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + IssueRepository.STREAM_FETCH_SIZE))
+    @Query("select r from ReturnedIssue r order by r.id")
+    Stream<ReturnedIssue> streamAll();
+}
@@ -1,10 +1,21 @@
 package com.example.library.service;
 
 import com.example.library.api.BookRequest;
+import com.example.library.api.BulkItemResult;
+import com.example.library.aspect.NoDbConcurrencyLimit;
+import com.example.library.cache.LookupCache;
+import com.example.library.id.IdAllocator;
+import com.example.library.id.IdSequence;
+import com.example.library.index.BookSearchIndex;
+import com.example.library.index.NameFilter;
 import com.example.library.model.Book;
 import com.example.library.repo.BookRepository;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -13,22 +24,70 @@ import java.util.NoSuchElementException;
 public class BookService {
 
     private final BookRepository bookRepository;
+    private final IdAllocator idAllocator;
+    private final LookupCache<Book> bookCache;
+    private final NameFilter nameFilter;
+    private final BulkImporter bulkImporter;
+    private final BookSearchIndex searchIndex;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
 
     public List<Book> showAllBooks() {
         return bookRepository.findAll();
     }
 
+    public KeysetPage<Book> showBooks(long after, Integer limit) {
+        return KeysetPage.fetch(after, limit, bookRepository::findByIdGreaterThanOrderByIdAsc, Book::getId);
+    }
+
+    /**
+     * Поиск по словам названия без учёта регистра, слово запроса может быть началом слова названия.
+     * Ищет только в индексе в памяти, поэтому не ограничивается вместе с обращениями к БД
+     */
+    @NoDbConcurrencyLimit
+    public List<Book> searchBooks(String query, Integer limit) {
+        return searchIndex.search(query, limit);
+    }
+
     public Book addNewBook(BookRequest request) {
-        if (bookRepository.findBookByName(request.getName()) != null) {
+        String name = request.getName();
+        // в БД идём, только если фильтр не может гарантировать, что такого названия ещё нет
+        if (nameFilter.mightContainBook(name) && bookRepository.findBookByName(name) != null) {
             throw new IllegalArgumentException("Экземпляр данной книги уже есть");
         }
-        Book book = new Book(request.getName());
-        bookRepository.save(book);
+        Book book = new Book(idAllocator.nextId(IdSequence.BOOKS), name);
+        try {
+            // persist, а не save: save с заданным id - это merge, он молча перезаписал бы книгу с тем же id
+            transactionTemplate.executeWithoutResult(status -> entityManager.persist(book));
+        } catch (DataIntegrityViolationException | ConstraintViolationException e) {
+            if (bookRepository.findBookByName(name) == null) {
+                // не дубликат названия: занят id
+                throw e;
+            }
+            // книгу с тем же названием параллельно добавил другой запрос
+            throw new IllegalArgumentException("Экземпляр данной книги уже есть", e);
+        }
         return book;
     }
 
+    /**
+     * Массовое добавление книг: результат по каждому элементу запроса в том же порядке
+     */
+    public List<BulkItemResult> addNewBooks(List<BookRequest> requests) {
+        List<String> names = requests.stream().map(BookRequest::getName).toList();
+        return bulkImporter.importByName(names,
+                bookRepository::findExistingNames,
+                name -> new Book(idAllocator.nextId(IdSequence.BOOKS), name),
+                Book::getId,
+                name -> {
+                    BookRequest request = new BookRequest();
+                    request.setName(name);
+                    return addNewBook(request);
+                });
+    }
+
     public Book showBookInfo(long id) {
-        return bookRepository.findById(id)
+        return bookCache.get(id, bookRepository::findById)
                 .orElseThrow(() -> new NoSuchElementException("Книга с id: " + id + " не найдена"));
     }
 
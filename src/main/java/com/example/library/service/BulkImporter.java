@@ -0,0 +1,104 @@
+package com.example.library.service;
+
+import com.example.library.api.BulkItemResult;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Массовая загрузка сущностей с уникальным именем (книги, читатели).
+ * Дубликаты отсеиваются в памяти и одним запросом на порцию, новые записи вставляются
+ * пакетами JDBC (hibernate.jdbc.batch_size), каждая порция - в своей транзакции
+ */
+@Component
+@RequiredArgsConstructor
+class BulkImporter {
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${application.bulk.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * @param existingNames какие из переданных имён уже есть в БД
+     * @param create        новая сущность с выделенным id
+     * @param id            идентификатор сущности
+     * @param addOne        добавление одной сущности через обычный путь сервиса, бросает IllegalArgumentException
+     *                      для дубликата; используется, если порция конфликтует с параллельной записью
+     */
+    <T> List<BulkItemResult> importByName(List<String> names,
+                                          Function<Collection<String>, Collection<String>> existingNames,
+                                          Function<String, T> create,
+                                          ToLongFunction<T> id,
+                                          Function<String, T> addOne) {
+        BulkItemResult[] results = new BulkItemResult[names.size()];
+        Map<String, Integer> positions = new LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            if (name == null || name.isBlank()) {
+                results[i] = BulkItemResult.invalid(name);
+            } else if (positions.putIfAbsent(name, i) != null) {
+                results[i] = BulkItemResult.duplicate(name);
+            }
+        }
+
+        List<String> unique = new ArrayList<>(positions.keySet());
+        for (int from = 0; from < unique.size(); from += batchSize) {
+            List<String> chunk = unique.subList(from, Math.min(from + batchSize, unique.size()));
+            Set<String> existing = new HashSet<>(existingNames.apply(chunk));
+            List<String> fresh = new ArrayList<>(chunk.size());
+            for (String name : chunk) {
+                if (existing.contains(name)) {
+                    results[positions.get(name)] = BulkItemResult.duplicate(name);
+                } else {
+                    fresh.add(name);
+                }
+            }
+            try {
+                List<T> created = insertChunk(fresh, create);
+                for (int i = 0; i < fresh.size(); i++) {
+                    String name = fresh.get(i);
+                    results[positions.get(name)] = BulkItemResult.created(name, id.applyAsLong(created.get(i)));
+                }
+            } catch (DataIntegrityViolationException | ConstraintViolationException e) {
+                for (String name : fresh) {
+                    try {
+                        results[positions.get(name)] = BulkItemResult.created(name, id.applyAsLong(addOne.apply(name)));
+                    } catch (IllegalArgumentException duplicate) {
+                        results[positions.get(name)] = BulkItemResult.duplicate(name);
+                    }
+                }
+            }
+        }
+        return List.of(results);
+    }
+
+    private <T> List<T> insertChunk(List<String> names, Function<String, T> create) {
+        return transactionTemplate.execute(status -> {
+            List<T> created = new ArrayList<>(names.size());
+            for (String name : names) {
+                T entity = create.apply(name);
+                entityManager.persist(entity);
+                created.add(entity);
+            }
+            entityManager.flush();
+            entityManager.clear();
+            return created;
+        });
+    }
+}
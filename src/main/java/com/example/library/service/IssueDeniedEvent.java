@@ -0,0 +1,13 @@
+package com.example.library.service;
+
+/**
+ * Событие об отказе в выдаче книги, публикуется {@link IssueService}
+ */
+public record IssueDeniedEvent(long readerId, long bookId, Reason reason) {
+
+    public enum Reason {
+        NOT_FOUND,
+        LIMIT_EXCEEDED,
+        BOOK_UNAVAILABLE
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.library.service;
+
+import com.example.library.model.Issue;
+
+/**
+ * Событие о выдаче или возврате книги, публикуется {@link IssueService} после записи в БД и после снятия
+ * блокировок читателя и книги. Поэтому события одной выдачи из разных запросов могут прийти в любом порядке:
+ * возврат - раньше выдачи
+ */
+public record IssueEvent(Type type, Issue issue) {
+
+    public enum Type {
+        ISSUED,
+        RETURNED
+    }
+}
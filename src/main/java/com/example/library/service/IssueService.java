@@ -1,84 +1,382 @@
 package com.example.library.service;
 
+import com.example.library.api.BulkIssueResult;
 import com.example.library.api.IssueRequest;
+import com.example.library.aspect.NoDbConcurrencyLimit;
+import com.example.library.aspect.Timer;
+import com.example.library.cache.LookupCache;
+import com.example.library.id.IdAllocator;
+import com.example.library.id.IdSequence;
+import com.example.library.journal.IssueJournal;
+import com.example.library.model.Book;
 import com.example.library.model.Issue;
+import com.example.library.model.Reader;
+import com.example.library.model.ReaderIssue;
+import com.example.library.model.ReturnedIssue;
 import com.example.library.repo.BookRepository;
 import com.example.library.repo.IssueRepository;
 import com.example.library.repo.ReaderRepository;
+import com.example.library.repo.ReturnedIssueRepository;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class IssueService {
 
+    private static final int LOCK_STRIPES = 256;
+    private static final Comparator<Issue> BY_ID = Comparator.comparingLong(Issue::getId);
+
     private final BookRepository bookRepository;
     private final ReaderRepository readerRepository;
     private final IssueRepository issueRepository;
+    private final ReturnedIssueRepository returnedIssueRepository;
+    private final IdAllocator idAllocator;
+    private final EntityManager entityManager;
+    private final LookupCache<Book> bookCache;
+    private final LookupCache<Reader> readerCache;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Optional<IssueJournal> journal;
+
+    private final StripedLocks readerLocks = new StripedLocks(LOCK_STRIPES);
+    private final StripedLocks bookLocks = new StripedLocks(LOCK_STRIPES);
 
     @Value("${application.max-allowed-books:1}")
     private long booksLimit;
 
+    @Timer
     public Issue issue(IssueRequest request) {
         long bookId = request.getBookId();
         long readerId = request.getReaderId();
-        bookRepository.findById(bookId)
-                .orElseThrow(() -> new NoSuchElementException("Не найдена книга с идентификатором \"" + bookId + "\""));
-        readerRepository.findById(readerId)
-                .orElseThrow(() -> new NoSuchElementException("Не найден читатель с идентификатором \"" + readerId + "\""));
-
-        // проверка, что лимит читателя не превышает Х книг
-        long readerIssuedBooksAmount = issueRepository.findAll().stream()
-                .filter(it -> it.getReaderId() == readerId)
-                .filter(it -> it.getIssued_at() != null)
-                .count();
-        long readerReturnedBooksAmount = issueRepository.findAll().stream()
-                .filter(it -> it.getReaderId() == readerId)
-                .filter(it -> it.getReturned_at() != null)
-                .count();
-
-        Issue issue = new Issue(request.getBookId(), request.getReaderId());
-        if (readerIssuedBooksAmount - readerReturnedBooksAmount < booksLimit) {
-            issueRepository.save(issue);
-        } else {
-            issueRepository.delete(issue);
-            Issue.sequence--;
-            throw new RuntimeException("Максимально разрешенное количество книг на руках у читателя с id: \"" + readerId + "\"");
+        if (bookCache.get(bookId, bookRepository::findById).isEmpty()) {
+            deny(readerId, bookId, IssueDeniedEvent.Reason.NOT_FOUND);
+            throw new NoSuchElementException("Не найдена книга с идентификатором \"" + bookId + "\"");
+        }
+        if (readerCache.get(readerId, readerRepository::findById).isEmpty()) {
+            deny(readerId, bookId, IssueDeniedEvent.Reason.NOT_FOUND);
+            throw new NoSuchElementException("Не найден читатель с идентификатором \"" + readerId + "\"");
+        }
+
+        // проверки и запись выполняются под блокировками читателя и книги, чтобы параллельные
+        // запросы не могли одновременно пройти проверку лимита или выдать одну и ту же книгу.
+        // События публикуются после снятия блокировок: слушатели не удлиняют время, на которое заняты читатель и книга
+        List<Object> events = new ArrayList<>(1);
+        try {
+            return withLocks(List.of(readerId), List.of(bookId), () -> {
+                // проверка, что лимит читателя не превышает Х книг
+                long readerOpenIssuesAmount = countOpenByReaderId(readerId);
+                if (readerOpenIssuesAmount >= booksLimit) {
+                    events.add(new IssueDeniedEvent(readerId, bookId, IssueDeniedEvent.Reason.LIMIT_EXCEEDED));
+                    throw new RuntimeException("Максимально разрешенное количество книг на руках у читателя с id: \"" + readerId + "\"");
+                }
+                if (isBookIssued(bookId)) {
+                    events.add(new IssueDeniedEvent(readerId, bookId, IssueDeniedEvent.Reason.BOOK_UNAVAILABLE));
+                    throw new IllegalStateException("Книга с идентификатором \"" + bookId + "\" уже выдана другому читателю");
+                }
+                Issue issue = new Issue(idAllocator.nextId(IdSequence.ISSUES), bookId, readerId);
+                // persist, а не save: save с заданным id - это merge, он молча перезаписал бы выдачу с тем же id
+                journal.ifPresentOrElse(it -> it.issued(issue),
+                        () -> transactionTemplate.executeWithoutResult(status -> entityManager.persist(issue)));
+                events.add(new IssueEvent(IssueEvent.Type.ISSUED, issue));
+                return issue;
+            });
+        } finally {
+            events.forEach(eventPublisher::publishEvent);
         }
-        return issue;
+    }
+
+    /**
+     * Пакетная выдача книг. Существование читателей и книг, количество книг на руках и занятость книг
+     * проверяются несколькими запросами на весь пакет; лимит читателя учитывает выдачи из этого же пакета.
+     * Все выдачи пакета записываются в одной транзакции
+     *
+     * @return результат по каждому элементу запроса в том же порядке
+     */
+    @Timer
+    public List<BulkIssueResult> issueAll(List<IssueRequest> requests) {
+        Set<Long> readerIds = requests.stream().map(IssueRequest::getReaderId).collect(Collectors.toSet());
+        Set<Long> bookIds = requests.stream().map(IssueRequest::getBookId).collect(Collectors.toSet());
+        Set<Long> existingReaders = readerRepository.findAllById(readerIds).stream()
+                .map(Reader::getId).collect(Collectors.toSet());
+        Set<Long> existingBooks = bookRepository.findAllById(bookIds).stream()
+                .map(Book::getId).collect(Collectors.toSet());
+
+        List<Object> events = new ArrayList<>();
+        List<BulkIssueResult> results = withLocks(readerIds, bookIds, () -> transactionTemplate.execute(status -> {
+            // пакет проверяется по БД, поэтому сначала в неё переносится всё, что уже записано в журнал
+            journal.ifPresent(IssueJournal::awaitApplied);
+            Map<Long, Long> openIssues = new HashMap<>();
+            Set<Long> issuedBooks = new HashSet<>();
+            if (!existingReaders.isEmpty() && !existingBooks.isEmpty()) {
+                for (IssueRepository.ReaderOpenIssues it : issueRepository.countOpenByReaderIds(existingReaders)) {
+                    openIssues.put(it.getReaderId(), it.getOpenIssues());
+                }
+                issuedBooks.addAll(issueRepository.findIssuedBookIds(existingBooks));
+            }
+
+            List<BulkIssueResult> batchResults = new ArrayList<>(requests.size());
+            for (IssueRequest request : requests) {
+                long readerId = request.getReaderId();
+                long bookId = request.getBookId();
+                BulkIssueResult.Status result;
+                Long issueId = null;
+                if (!existingReaders.contains(readerId) || !existingBooks.contains(bookId)) {
+                    result = BulkIssueResult.Status.NOT_FOUND;
+                    events.add(new IssueDeniedEvent(readerId, bookId, IssueDeniedEvent.Reason.NOT_FOUND));
+                } else if (openIssues.getOrDefault(readerId, 0L) >= booksLimit) {
+                    result = BulkIssueResult.Status.LIMIT_EXCEEDED;
+                    events.add(new IssueDeniedEvent(readerId, bookId, IssueDeniedEvent.Reason.LIMIT_EXCEEDED));
+                } else if (!issuedBooks.add(bookId)) {
+                    result = BulkIssueResult.Status.BOOK_UNAVAILABLE;
+                    events.add(new IssueDeniedEvent(readerId, bookId, IssueDeniedEvent.Reason.BOOK_UNAVAILABLE));
+                } else {
+                    Issue issue = new Issue(idAllocator.nextId(IdSequence.ISSUES), bookId, readerId);
+                    entityManager.persist(issue);
+                    openIssues.merge(readerId, 1L, Long::sum);
+                    issueId = issue.getId();
+                    result = BulkIssueResult.Status.CREATED;
+                    events.add(new IssueEvent(IssueEvent.Type.ISSUED, issue));
+                }
+                batchResults.add(new BulkIssueResult(issueId, readerId, bookId, result));
+            }
+            return batchResults;
+        }));
+        // события публикуются после фиксации транзакции
+        events.forEach(eventPublisher::publishEvent);
+        return results;
+    }
+
+    /**
+     * Пакетный возврат книг: открытые выдачи загружаются одним запросом и переносятся в историю в одной транзакции
+     * под блокировками их читателей и книг
+     *
+     * @return результат по каждому идентификатору выдачи в том же порядке
+     */
+    @Timer
+    public List<BulkIssueResult> returnAll(List<Long> issueIds) {
+        // выдачи ищутся в БД, поэтому сначала в неё переносится всё, что уже записано в журнал
+        journal.ifPresent(IssueJournal::awaitApplied);
+        List<Issue> found = issueRepository.findAllById(issueIds);
+        Set<Long> readerIds = found.stream().map(Issue::getReaderId).collect(Collectors.toSet());
+        Set<Long> bookIds = found.stream().map(Issue::getBookId).collect(Collectors.toSet());
+        List<IssueEvent> events = new ArrayList<>();
+        List<BulkIssueResult> results = withLocks(readerIds, bookIds, () -> {
+            // одиночный возврат мог записать эти выдачи в журнал, пока ждали блокировки: ждём его переноса в БД
+            journal.ifPresent(IssueJournal::awaitApplied);
+            // параллельный возврат мог перенести часть выдач в историю, пока ждали блокировки
+            Map<Long, Issue> open = issueRepository.findAllById(found.stream().map(Issue::getId).toList()).stream()
+                    .collect(Collectors.toMap(Issue::getId, Function.identity()));
+            Map<Long, Issue> returned = returnedIssueRepository.findAllById(issueIds).stream()
+                    .collect(Collectors.toMap(ReturnedIssue::getId, ReturnedIssue::toIssue));
+            LocalDateTime now = LocalDateTime.now();
+            List<Issue> moved = new ArrayList<>();
+            List<BulkIssueResult> batchResults = new ArrayList<>(issueIds.size());
+            for (Long issueId : issueIds) {
+                Issue issue = open.remove(issueId);
+                BulkIssueResult.Status result = BulkIssueResult.Status.RETURNED;
+                if (issue != null) {
+                    issue.setReturned_at(now);
+                    moved.add(issue);
+                    returned.put(issueId, issue);
+                    events.add(new IssueEvent(IssueEvent.Type.RETURNED, issue));
+                } else {
+                    issue = returned.get(issueId);
+                    result = BulkIssueResult.Status.ALREADY_RETURNED;
+                }
+                batchResults.add(issue == null
+                        ? new BulkIssueResult(issueId, null, null, BulkIssueResult.Status.NOT_FOUND)
+                        : new BulkIssueResult(issueId, issue.getReaderId(), issue.getBookId(), result));
+            }
+            moveToHistory(moved);
+            return batchResults;
+        });
+        events.forEach(eventPublisher::publishEvent);
+        return results;
     }
 
     public Issue showIssueInfo(long id) {
+        Optional<Issue> journaled = journal.flatMap(it -> it.find(id));
+        if (journaled.isPresent()) {
+            return journaled.get();
+        }
         return issueRepository.findById(id)
+                .or(() -> returnedIssueRepository.findById(id).map(ReturnedIssue::toIssue))
                 .orElseThrow(() -> new NoSuchElementException("Не найдена выдача книг с id: \"" + id + "\""));
     }
 
-    public List<Issue> getAllIssuesByReader(long id) {
-        readerRepository.findById(id)
-                .orElseThrow(() -> new NoSuchElementException("Не найден читатель с id: \"" + id + "\""));
-        List<Issue> allIssuesList = issueRepository.findAll().stream()
-                .filter(it -> it.getReaderId() == id)
-                .toList();
-        if (allIssuesList.isEmpty()) {
+    /**
+     * Страница выдач читателя (открытых и возвращённых) от новых к старым.
+     * Следующая страница запрашивается с before = nextCursor
+     *
+     * @param before идентификатор выдачи, с которой начинаются более старые; null - с последней выдачи
+     */
+    public KeysetPage<Issue> getReaderIssues(long id, Long before, Integer limit) {
+        checkReaderExists(id);
+        int size = KeysetPage.pageSize(limit);
+        long from = before == null ? Long.MAX_VALUE : before;
+        List<Issue> rows = SortedMerge.merge(issueRepository.findReaderIssuesBefore(id, from, Limit.of(size + 1)),
+                returnedIssueRepository.findReaderIssuesBefore(id, from, Limit.of(size + 1)).stream()
+                        .map(ReturnedIssue::toIssue).toList(),
+                BY_ID.reversed(), size + 1);
+        if (before == null && rows.isEmpty()) {
             throw new NoSuchElementException("Не найдены выдачи книг читателю с id: \"" + id + "\"");
         }
-        return allIssuesList;
+        return KeysetPage.of(rows, size, Issue::getId);
+    }
+
+    /**
+     * Последние выдачи читателя с названиями книг, от новых к старым
+     *
+     * @param limit сколько выдач показать; null - размер страницы по умолчанию
+     */
+    public List<ReaderIssue> getReaderHistory(long id, Integer limit) {
+        checkReaderExists(id);
+        Limit rows = Limit.of(KeysetPage.pageSize(limit));
+        return SortedMerge.merge(issueRepository.findReaderIssues(id, rows),
+                returnedIssueRepository.findReaderIssues(id, rows),
+                Comparator.comparingLong(ReaderIssue::getId).reversed(), rows.max());
+    }
+
+    private void deny(long readerId, long bookId, IssueDeniedEvent.Reason reason) {
+        eventPublisher.publishEvent(new IssueDeniedEvent(readerId, bookId, reason));
+    }
+
+    private void checkReaderExists(long id) {
+        if (readerCache.get(id, readerRepository::findById).isEmpty()) {
+            throw new NoSuchElementException("Не найден читатель с id: \"" + id + "\"");
+        }
     }
 
+    /**
+     * Возврат под блокировками читателя и книги: выдача переносится из issues в историю (или записывается
+     * в журнал выдач). Повторный возврат не меняет дату первого возврата
+     */
+    @Timer
     public Issue returnBook(long id) {
-        Issue issue = showIssueInfo(id);
-        if (issue == null) {
-            throw new NoSuchElementException("Не найдена выдача id: \"" + id + "\"");
+        Issue found = showIssueInfo(id);
+        List<Object> events = new ArrayList<>(1);
+        try {
+            return withLocks(List.of(found.getReaderId()), List.of(found.getBookId()), () -> {
+                Issue issue = showIssueInfo(id);
+                if (issue.getReturned_at() != null) {
+                    return issue;
+                }
+                issue.setReturned_at(LocalDateTime.now());
+                journal.ifPresentOrElse(it -> it.returned(issue), () -> moveToHistory(List.of(issue)));
+                events.add(new IssueEvent(IssueEvent.Type.RETURNED, issue));
+                return issue;
+            });
+        } finally {
+            events.forEach(eventPublisher::publishEvent);
+        }
+    }
+
+    /**
+     * Удаляет возвращённые выдачи из issues и добавляет их в историю одной транзакцией
+     */
+    private void moveToHistory(List<Issue> returned) {
+        if (returned.isEmpty()) {
+            return;
         }
-        issue.setReturned_at(LocalDateTime.now());
-        return issueRepository.save(issue);
+        transactionTemplate.executeWithoutResult(status -> {
+            issueRepository.deleteAllByIdInBatch(returned.stream().map(Issue::getId).toList());
+            returned.forEach(issue -> entityManager.persist(ReturnedIssue.of(issue)));
+        });
+    }
+
+    /**
+     * Книг на руках у читателя с учётом выдач и возвратов, ещё не перенесённых из журнала
+     */
+    private long countOpenByReaderId(long readerId) {
+        return journal.map(it -> it.consistentRead(() ->
+                        issueRepository.countOpenByReaderId(readerId) + it.readerOpenDelta(readerId)))
+                .orElseGet(() -> issueRepository.countOpenByReaderId(readerId));
+    }
+
+    private boolean isBookIssued(long bookId) {
+        return journal.map(it -> it.consistentRead(() ->
+                        (issueRepository.isBookIssued(bookId) ? 1 : 0) + it.bookOpenDelta(bookId) > 0))
+                .orElseGet(() -> issueRepository.isBookIssued(bookId));
     }
 
     public List<Issue> showAllIssues() {
-        return issueRepository.findAll();
+        List<Issue> issues = new ArrayList<>(issueRepository.findAll());
+        returnedIssueRepository.findAll().forEach(returned -> issues.add(returned.toIssue()));
+        issues.sort(BY_ID);
+        return issues;
+    }
+
+    /**
+     * Передаёт все выдачи (открытые и из истории) по одной в порядке возрастания id, не загружая их в память
+     * целиком. Контекст персистентности периодически очищается, чтобы прочитанные сущности не накапливались.
+     * Выгрузка идёт со скоростью клиента, поэтому разрешение на обращение к БД она не занимает: иначе несколько
+     * медленных клиентов заняли бы все разрешения. Соединение на время выгрузки по-прежнему ограничивает пул.
+     * Обе таблицы читаются из одного снимка, поэтому возврат во время выгрузки не теряет и не дублирует выдачу
+     */
+    @NoDbConcurrencyLimit
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public void exportAllIssues(Consumer<Issue> consumer) {
+        try (Stream<Issue> open = issueRepository.streamAll();
+             Stream<Issue> returned = returnedIssueRepository.streamAll().map(ReturnedIssue::toIssue)) {
+            long exported = 0;
+            for (Iterator<Issue> it = SortedMerge.merge(open.iterator(), returned.iterator(), BY_ID); it.hasNext(); ) {
+                consumer.accept(it.next());
+                if (++exported % IssueRepository.STREAM_FETCH_SIZE == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+    }
+
+    public KeysetPage<Issue> showIssues(long after, Integer limit) {
+        return KeysetPage.fetch(after, limit, (from, rows) -> SortedMerge.merge(
+                issueRepository.findByIdGreaterThanOrderByIdAsc(from, rows),
+                returnedIssueRepository.findByIdGreaterThanOrderByIdAsc(from, rows).stream()
+                        .map(ReturnedIssue::toIssue).toList(),
+                BY_ID, rows.max()), Issue::getId);
+    }
+
+    /**
+     * Выполняет действие под блокировками указанных читателей и книг.
+     * Блокировки всегда захватываются в порядке: читатели, затем книги
+     */
+    private <T> T withLocks(Collection<Long> readerIds, Collection<Long> bookIds, Supplier<T> action) {
+        ReentrantLock[] lockedReaders = readerLocks.lockAll(readerIds);
+        try {
+            ReentrantLock[] lockedBooks = bookLocks.lockAll(bookIds);
+            try {
+                return action.get();
+            } finally {
+                StripedLocks.unlockAll(lockedBooks);
+            }
+        } finally {
+            StripedLocks.unlockAll(lockedReaders);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.example.library.service;
+
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Страница списка при постраничной выборке по ключу (keyset pagination).
+ * Следующая страница запрашивается с after = nextCursor; nextCursor == null означает последнюю страницу
+ */
+public record KeysetPage<T>(List<T> items, Long nextCursor) {
+
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+
+    /**
+     * Выбирает на одну запись больше запрошенного, чтобы без отдельного count понять, есть ли следующая страница
+     *
+     * @param after  идентификатор, после которого начинается страница
+     * @param limit  размер страницы; null - размер по умолчанию
+     * @param finder запрос записей с id > after в порядке возрастания id
+     * @param id     идентификатор записи
+     */
+    public static <T> KeysetPage<T> fetch(long after, Integer limit,
+                                          BiFunction<Long, Limit, List<T>> finder, ToLongFunction<T> id) {
+        int size = pageSize(limit);
+        return of(finder.apply(after, Limit.of(size + 1)), size, id);
+    }
+
+    /**
+     * @return размер страницы: по умолчанию, если limit == null, иначе limit в пределах [1, MAX_LIMIT]
+     */
+    public static int pageSize(Integer limit) {
+        return limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+
+    /**
+     * @param rows до size + 1 записей, выбранных после курсора
+     */
+    public static <T> KeysetPage<T> of(List<T> rows, int size, ToLongFunction<T> id) {
+        if (rows.size() <= size) {
+            return new KeysetPage<>(rows, null);
+        }
+        List<T> items = rows.subList(0, size);
+        return new KeysetPage<>(items, id.applyAsLong(items.get(size - 1)));
+    }
+}
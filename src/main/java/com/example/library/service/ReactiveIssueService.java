@@ -0,0 +1,197 @@
+package com.example.library.service;
+
+import com.example.library.api.IssueRequest;
+import com.example.library.id.IdAllocator;
+import com.example.library.id.IdSequence;
+import com.example.library.model.Issue;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+
+/**
+ * Выдачи книг без блокирующих вызовов (профиль reactive): доступ к БД через R2DBC.
+ * <p>
+ * Вместо блокировок процесса, как в {@link IssueService}, проверки и запись выполняются в транзакции
+ * под блокировками строк читателя и книги (select ... for update, всегда в порядке: читатель, затем книга).
+ * В этом профиле все выдачи идут через этот сервис, поэтому ограничения соблюдаются и при нескольких экземплярах
+ */
+@Service
+@Profile("reactive")
+public class ReactiveIssueService {
+
+    private static final String OPEN_COLUMNS = "id, book_id, reader_id, issued_at";
+    private static final String RETURNED_COLUMNS = "id, book_id, reader_id, issued_at, returned_at";
+    private static final Comparator<Issue> BY_ID = Comparator.comparingLong(Issue::getId);
+
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final IdAllocator idAllocator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final long booksLimit;
+
+    public ReactiveIssueService(ConnectionFactory connectionFactory, IdAllocator idAllocator,
+                                ApplicationEventPublisher eventPublisher,
+                                @Value("${application.max-allowed-books:1}") long booksLimit) {
+        this.databaseClient = DatabaseClient.create(connectionFactory);
+        // менеджер транзакций R2DBC не регистрируется бином, иначе JPA не создаст свой transactionManager
+        this.transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+        this.idAllocator = idAllocator;
+        this.eventPublisher = eventPublisher;
+        this.booksLimit = booksLimit;
+    }
+
+    public Mono<Issue> issue(IssueRequest request) {
+        long bookId = request.getBookId();
+        long readerId = request.getReaderId();
+        Mono<Issue> issue = lockRow("readers", readerId)
+                .switchIfEmpty(deny(readerId, bookId, IssueDeniedEvent.Reason.NOT_FOUND,
+                        new NoSuchElementException("Не найден читатель с идентификатором \"" + readerId + "\"")))
+                .then(lockRow("books", bookId))
+                .switchIfEmpty(deny(readerId, bookId, IssueDeniedEvent.Reason.NOT_FOUND,
+                        new NoSuchElementException("Не найдена книга с идентификатором \"" + bookId + "\"")))
+                .then(count("select count(*) from issues where reader_id = :id", readerId))
+                .flatMap(readerOpenIssues -> readerOpenIssues >= booksLimit
+                        ? deny(readerId, bookId, IssueDeniedEvent.Reason.LIMIT_EXCEEDED,
+                        new RuntimeException("Максимально разрешенное количество книг на руках у читателя с id: \"" + readerId + "\""))
+                        : count("select count(*) from issues where book_id = :id", bookId))
+                .flatMap(bookOpenIssues -> bookOpenIssues > 0
+                        ? deny(readerId, bookId, IssueDeniedEvent.Reason.BOOK_UNAVAILABLE,
+                        new IllegalStateException("Книга с идентификатором \"" + bookId + "\" уже выдана другому читателю"))
+                        : nextIssueId().flatMap(id -> insert(new Issue(id, bookId, readerId))));
+        return transactionalOperator.transactional(issue)
+                .doOnNext(saved -> eventPublisher.publishEvent(new IssueEvent(IssueEvent.Type.ISSUED, saved)));
+    }
+
+    /**
+     * Выдача переносится из issues в историю под блокировкой строки. Повторный возврат не меняет дату первого возврата
+     */
+    public Mono<Issue> returnBook(long id) {
+        Mono<Issue> returned = lockRow("issues", id)
+                .flatMap(locked -> databaseClient.sql("insert into issue_history (" + RETURNED_COLUMNS + ") "
+                                + "select " + OPEN_COLUMNS + ", :now from issues where id = :id")
+                        .bind("now", LocalDateTime.now())
+                        .bind("id", id)
+                        .then()
+                        .then(databaseClient.sql("delete from issues where id = :id").bind("id", id).then())
+                        .thenReturn(true))
+                .defaultIfEmpty(false)
+                .flatMap(moved -> showIssueInfo(id).doOnNext(issue -> {
+                    if (moved) {
+                        eventPublisher.publishEvent(new IssueEvent(IssueEvent.Type.RETURNED, issue));
+                    }
+                }));
+        return transactionalOperator.transactional(returned);
+    }
+
+    public Mono<Issue> showIssueInfo(long id) {
+        return databaseClient.sql("select " + OPEN_COLUMNS + " from issues where id = :id")
+                .bind("id", id)
+                .map(ReactiveIssueService::toIssue)
+                .one()
+                .switchIfEmpty(databaseClient.sql("select " + RETURNED_COLUMNS + " from issue_history where id = :id")
+                        .bind("id", id)
+                        .map(ReactiveIssueService::toReturnedIssue)
+                        .one())
+                .switchIfEmpty(Mono.error(() -> new NoSuchElementException("Не найдена выдача книг с id: \"" + id + "\"")));
+    }
+
+    /**
+     * Страница из открытых выдач и истории: каждая таблица читается по первичному ключу не больше чем на limit + 1
+     * строк, результаты сливаются по id
+     */
+    public Mono<KeysetPage<Issue>> showIssues(long after, Integer limit) {
+        int size = KeysetPage.pageSize(limit);
+        Flux<Issue> open = databaseClient.sql("select " + OPEN_COLUMNS + " from issues where id > :after order by id limit :limit")
+                .bind("after", after)
+                .bind("limit", size + 1)
+                .map(ReactiveIssueService::toIssue)
+                .all();
+        Flux<Issue> returned = databaseClient.sql("select " + RETURNED_COLUMNS + " from issue_history "
+                        + "where id > :after order by id limit :limit")
+                .bind("after", after)
+                .bind("limit", size + 1)
+                .map(ReactiveIssueService::toReturnedIssue)
+                .all();
+        return Flux.mergeComparing(BY_ID, open, returned)
+                .take(size + 1)
+                .collectList()
+                .map(rows -> KeysetPage.of(rows, size, Issue::getId));
+    }
+
+    /**
+     * Все выдачи (открытые и из истории) в порядке возрастания id; строки читаются по мере запроса подписчиком
+     */
+    public Flux<Issue> exportAllIssues() {
+        return Flux.mergeComparing(BY_ID,
+                databaseClient.sql("select " + OPEN_COLUMNS + " from issues order by id")
+                        .map(ReactiveIssueService::toIssue)
+                        .all(),
+                databaseClient.sql("select " + RETURNED_COLUMNS + " from issue_history order by id")
+                        .map(ReactiveIssueService::toReturnedIssue)
+                        .all());
+    }
+
+    /**
+     * Распределитель может обращаться к БД через JDBC (первый вызов, новый блок), поэтому вызывается
+     * не на потоках событий
+     */
+    private Mono<Long> nextIssueId() {
+        return Mono.fromCallable(() -> idAllocator.nextId(IdSequence.ISSUES))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Long> lockRow(String table, long id) {
+        return databaseClient.sql("select id from " + table + " where id = :id for update")
+                .bind("id", id)
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    private Mono<Long> count(String sql, long id) {
+        return databaseClient.sql(sql)
+                .bind("id", id)
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    private Mono<Issue> insert(Issue issue) {
+        return databaseClient.sql("insert into issues (" + OPEN_COLUMNS + ") values (:id, :bookId, :readerId, :issuedAt)")
+                .bind("id", issue.getId())
+                .bind("bookId", issue.getBookId())
+                .bind("readerId", issue.getReaderId())
+                .bind("issuedAt", issue.getIssued_at())
+                .then()
+                .thenReturn(issue);
+    }
+
+    private <T> Mono<T> deny(long readerId, long bookId, IssueDeniedEvent.Reason reason, RuntimeException error) {
+        return Mono.defer(() -> {
+            eventPublisher.publishEvent(new IssueDeniedEvent(readerId, bookId, reason));
+            return Mono.error(error);
+        });
+    }
+
+    private static Issue toIssue(Readable row) {
+        return new Issue(row.get("id", Long.class), row.get("book_id", Long.class),
+                row.get("reader_id", Long.class), row.get("issued_at", LocalDateTime.class));
+    }
+
+    private static Issue toReturnedIssue(Readable row) {
+        Issue issue = toIssue(row);
+        issue.setReturned_at(row.get("returned_at", LocalDateTime.class));
+        return issue;
+    }
+}
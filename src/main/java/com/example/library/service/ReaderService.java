@@ -1,10 +1,19 @@
 package com.example.library.service;
 
+import com.example.library.api.BulkItemResult;
 import com.example.library.api.ReaderRequest;
+import com.example.library.cache.LookupCache;
+import com.example.library.id.IdAllocator;
+import com.example.library.id.IdSequence;
+import com.example.library.index.NameFilter;
 import com.example.library.model.Reader;
 import com.example.library.repo.ReaderRepository;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -14,22 +23,60 @@ import java.util.NoSuchElementException;
 public class ReaderService {
 
     private final ReaderRepository readerRepository;
+    private final IdAllocator idAllocator;
+    private final LookupCache<Reader> readerCache;
+    private final NameFilter nameFilter;
+    private final BulkImporter bulkImporter;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
 
     public List<Reader> showAllReaders() {
         return readerRepository.findAll();
     }
 
+    public KeysetPage<Reader> showReaders(long after, Integer limit) {
+        return KeysetPage.fetch(after, limit, readerRepository::findByIdGreaterThanOrderByIdAsc, Reader::getId);
+    }
+
     public Reader addNewReader(ReaderRequest request) {
-        if (readerRepository.findReaderByName(request.getName()) != null) {
+        String name = request.getName();
+        // в БД идём, только если фильтр не может гарантировать, что такого имени ещё нет
+        if (nameFilter.mightContainReader(name) && readerRepository.findReaderByName(name) != null) {
             throw new IllegalArgumentException("Данный читатель уже существует");
         }
-        Reader reader = new Reader(request.getName());
-        readerRepository.save(reader);
+        Reader reader = new Reader(idAllocator.nextId(IdSequence.READERS), name);
+        try {
+            // persist, а не save: save с заданным id - это merge, он молча перезаписал бы читателя с тем же id
+            transactionTemplate.executeWithoutResult(status -> entityManager.persist(reader));
+        } catch (DataIntegrityViolationException | ConstraintViolationException e) {
+            if (readerRepository.findReaderByName(name) == null) {
+                // не дубликат имени: занят id
+                throw e;
+            }
+            // читателя с тем же именем параллельно добавил другой запрос
+            throw new IllegalArgumentException("Данный читатель уже существует", e);
+        }
         return reader;
     }
 
+    /**
+     * Массовое добавление читателей: результат по каждому элементу запроса в том же порядке
+     */
+    public List<BulkItemResult> addNewReaders(List<ReaderRequest> requests) {
+        List<String> names = requests.stream().map(ReaderRequest::getName).toList();
+        return bulkImporter.importByName(names,
+                readerRepository::findExistingNames,
+                name -> new Reader(idAllocator.nextId(IdSequence.READERS), name),
+                Reader::getId,
+                name -> {
+                    ReaderRequest request = new ReaderRequest();
+                    request.setName(name);
+                    return addNewReader(request);
+                });
+    }
+
     public Reader showReaderInfo(long id) {
-        return readerRepository.findById(id)
+        return readerCache.get(id, readerRepository::findById)
                 .orElseThrow(() -> new NoSuchElementException("Не найден читатель с id: \"" + id + "\""));
     }
 
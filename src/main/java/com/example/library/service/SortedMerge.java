@@ -0,0 +1,62 @@
+package com.example.library.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Слияние двух последовательностей, упорядоченных одинаково. Открытые выдачи и история возвратов читаются
+ * каждая по своему индексу и отдаются одним списком без общей сортировки.
+ * Таблицы читаются разными запросами, и возврат, завершившийся между ними, попадает в обе. Поэтому равные
+ * по order элементы считаются одной выдачей и остаётся элемент второй последовательности - истории
+ */
+final class SortedMerge {
+
+    private SortedMerge() {
+    }
+
+    /**
+     * @return первые limit различных элементов обоих списков в порядке order
+     */
+    static <T> List<T> merge(List<T> first, List<T> second, Comparator<? super T> order, int limit) {
+        List<T> merged = new ArrayList<>(Math.min(limit, first.size() + second.size()));
+        for (Iterator<T> it = merge(first.iterator(), second.iterator(), order); it.hasNext() && merged.size() < limit; ) {
+            merged.add(it.next());
+        }
+        return merged;
+    }
+
+    static <T> Iterator<T> merge(Iterator<T> first, Iterator<T> second, Comparator<? super T> order) {
+        return new Iterator<>() {
+
+            private T nextFirst = first.hasNext() ? first.next() : null;
+            private T nextSecond = second.hasNext() ? second.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return nextFirst != null || nextSecond != null;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int compared = nextFirst == null ? 1 : nextSecond == null ? -1 : order.compare(nextFirst, nextSecond);
+                if (compared < 0) {
+                    T result = nextFirst;
+                    nextFirst = first.hasNext() ? first.next() : null;
+                    return result;
+                }
+                if (compared == 0) {
+                    nextFirst = first.hasNext() ? first.next() : null;
+                }
+                T result = nextSecond;
+                nextSecond = second.hasNext() ? second.next() : null;
+                return result;
+            }
+        };
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.library.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Набор блокировок, разделённых по ключу (lock striping).
+ * Разные ключи попадают на одну блокировку, только если совпадают младшие биты их хеша.
+ * Число объектов-блокировок фиксировано и не зависит от количества ключей.
+ * Прирост пропускной способности с числом ядер не измерялся, см. LibraryBenchmark.issue
+ */
+public class StripedLocks {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    /**
+     * @param stripes количество блокировок, округляется вверх до степени двойки
+     */
+    public StripedLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Захватывает блокировки для всех ключей в порядке возрастания номера блокировки,
+     * поэтому одновременные вызовы с пересекающимися наборами ключей не приводят к взаимной блокировке
+     *
+     * @return захваченные блокировки, которые нужно освободить через {@link #unlockAll(ReentrantLock[])}
+     */
+    public ReentrantLock[] lockAll(Collection<Long> keys) {
+        int[] stripes = keys.stream()
+                .mapToInt(this::stripe)
+                .distinct()
+                .sorted()
+                .toArray();
+        ReentrantLock[] acquired = Arrays.stream(stripes)
+                .mapToObj(it -> locks[it])
+                .toArray(ReentrantLock[]::new);
+        for (ReentrantLock lock : acquired) {
+            lock.lock();
+        }
+        return acquired;
+    }
+
+    public static void unlockAll(ReentrantLock[] acquired) {
+        for (int i = acquired.length - 1; i >= 0; i--) {
+            acquired[i].unlock();
+        }
+    }
+
+    private int stripe(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
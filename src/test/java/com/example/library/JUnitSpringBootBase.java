@@ -1,11 +1,48 @@
 package com.example.library;
 
+import com.example.library.api.IssueRequest;
+import com.example.library.model.Book;
+import com.example.library.model.Issue;
+import com.example.library.model.Reader;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
 
+/**
+ * Общий контекст тестов. Тест, которому нужны только пустые таблицы, очищает их сам и работает в этом контексте;
+ * свой контекст (и свою БД) заводят тесты, которым нужны другие настройки или чистое состояние в памяти
+ */
 @ActiveProfiles("test")
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @AutoConfigureWebTestClient
 public class JUnitSpringBootBase {
-}
\ No newline at end of file
+
+    @Autowired
+    private WebTestClient client;
+
+    /**
+     * POST, ожидающий 201 Created
+     */
+    protected <T> T post(String uri, Object body, Class<T> type) {
+        return client.post()
+                .uri(uri)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CREATED)
+                .expectBody(type)
+                .returnResult().getResponseBody();
+    }
+
+    /**
+     * Выдача книги читателю через API, ожидающая 201 Created
+     */
+    protected Issue issue(Reader reader, Book book) {
+        IssueRequest request = new IssueRequest();
+        request.setReaderId(reader.getId());
+        request.setBookId(book.getId());
+        return post("/issue", request, Issue.class);
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.library;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+class VirtualThreadsConfigTests {
+
+    @Test
+    void testOlderJavaIsRejected() {
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class,
+                () -> VirtualThreadsConfig.requireJavaVersion(17));
+        Assertions.assertTrue(e.getMessage().contains("Java 17"), e.getMessage());
+        Assertions.assertDoesNotThrow(() -> VirtualThreadsConfig.requireJavaVersion(21));
+    }
+
+    @Test
+    @EnabledForJreRange(max = JRE.JAVA_20)
+    void testVirtualProfileFailsToStartOnOlderJava() {
+        new ApplicationContextRunner()
+                .withInitializer(context -> context.getEnvironment().setActiveProfiles("virtual"))
+                .withUserConfiguration(VirtualThreadsConfig.class)
+                .run(context -> {
+                    Assertions.assertNotNull(context.getStartupFailure());
+                    Assertions.assertInstanceOf(IllegalStateException.class, rootCause(context.getStartupFailure()));
+                });
+    }
+
+    private static Throwable rootCause(Throwable e) {
+        while (e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+}
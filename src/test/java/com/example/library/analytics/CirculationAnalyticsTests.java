@@ -0,0 +1,99 @@
+package com.example.library.analytics;
+
+import com.example.library.JUnitSpringBootBase;
+import com.example.library.model.Book;
+import com.example.library.model.BookCirculation;
+import com.example.library.model.BookPopularity;
+import com.example.library.model.HourlyCirculation;
+import com.example.library.model.Issue;
+import com.example.library.model.Reader;
+import com.example.library.service.IssueEvent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// своя БД и свой контекст: счётчики накапливаются за всё время жизни контекста
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:analytics")
+class CirculationAnalyticsTests extends JUnitSpringBootBase {
+
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    CirculationAnalytics analytics;
+
+    @Test
+    void testRollupsFollowIssuesAndReturns() {
+        Reader reader = post("/reader", Map.of("name", "Reader_1"), Reader.class);
+        Book popular = post("/book", Map.of("name", "Book_1"), Book.class);
+        Book other = post("/book", Map.of("name", "Book_2"), Book.class);
+        for (int i = 0; i < 3; i++) {
+            Issue issue = issue(reader, popular);
+            webTestClient.put().uri("/issue/" + issue.getId()).exchange().expectStatus().isOk();
+        }
+        issue(reader, other);
+        // выдача старше окна попадает только в счётчики книги
+        Issue old = new Issue(0, other.getId(), reader.getId(), LocalDateTime.now().minusDays(30));
+        analytics.onIssue(new IssueEvent(IssueEvent.Type.ISSUED, old));
+
+        List<BookPopularity> top = webTestClient.get()
+                .uri("/analytics/books/top?days=1&limit=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<List<BookPopularity>>() {
+                })
+                .returnResult().getResponseBody();
+        Assertions.assertEquals(List.of(new BookPopularity(popular.getId(), 3, 0)), top);
+
+        BookCirculation circulation = webTestClient.get()
+                .uri("/analytics/books/" + other.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(BookCirculation.class)
+                .returnResult().getResponseBody();
+        Assertions.assertEquals(new BookCirculation(other.getId(), 2, 0), circulation);
+
+        List<HourlyCirculation> hours = webTestClient.get()
+                .uri("/analytics/circulation?hours=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<List<HourlyCirculation>>() {
+                })
+                .returnResult().getResponseBody();
+        Assertions.assertEquals(2, hours.size());
+        Assertions.assertEquals(4, hours.stream().mapToLong(HourlyCirculation::getIssued).sum());
+        Assertions.assertEquals(3, hours.stream().mapToLong(HourlyCirculation::getReturned).sum());
+    }
+
+    @Test
+    void testMergedSketchesBoundExactCounts() {
+        SplittableRandom random = new SplittableRandom(42);
+        List<SpaceSaving> sketches = List.of(new SpaceSaving(20), new SpaceSaving(20), new SpaceSaving(20));
+        Map<Long, Long> exact = new HashMap<>();
+        for (SpaceSaving sketch : sketches) {
+            for (int i = 0; i < 10_000; i++) {
+                // перекошенное распределение: малые ключи встречаются намного чаще
+                long key = (long) Math.floor(Math.pow(random.nextDouble(), 3) * 500);
+                sketch.offer(key);
+                exact.merge(key, 1L, Long::sum);
+            }
+        }
+
+        List<SpaceSaving.Counter> top = SpaceSaving.top(sketches, 5);
+        Assertions.assertEquals(5, top.size());
+        for (SpaceSaving.Counter counter : top) {
+            long count = exact.getOrDefault(counter.key(), 0L);
+            Assertions.assertTrue(counter.count() >= count && counter.count() - counter.error() <= count,
+                    counter.key() + ": " + counter.count() + " - " + counter.error() + ", точно " + count);
+        }
+        Assertions.assertEquals(0, top.get(0).key());
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.library.api;
+
+import com.example.library.JUnitSpringBootBase;
+import com.example.library.model.Book;
+import com.example.library.repo.BookRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+class BookControllerTests extends JUnitSpringBootBase {
+
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    BookRepository bookRepository;
+
+    @BeforeEach
+    void clean() {
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    void testGetAllBooksNotModified() {
+        post("/book", Map.of("name", "Book_1"), Book.class);
+
+        String etag = webTestClient.get()
+                .uri("/book")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().cacheControl(CacheControl.noCache())
+                .returnResult(String.class)
+                .getResponseHeaders().getETag();
+        Assertions.assertNotNull(etag);
+
+        webTestClient.get()
+                .uri("/book")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, etag)
+                .expectBody().isEmpty();
+
+        post("/book", Map.of("name", "Book_2"), Book.class);
+
+        List<Book> books = webTestClient.get()
+                .uri("/book")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value(HttpHeaders.ETAG, value -> Assertions.assertNotEquals(etag, value))
+                .expectBody(new ParameterizedTypeReference<List<Book>>() {})
+                .returnResult().getResponseBody();
+        Assertions.assertEquals(2, books.size());
+    }
+
+    @Test
+    void testGetBookNotModified() {
+        Book book = post("/book", Map.of("name", "Book_1"), Book.class);
+        Book other = post("/book", Map.of("name", "Book_2"), Book.class);
+
+        String etag = webTestClient.get()
+                .uri("/book/" + book.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseHeaders().getETag();
+        Assertions.assertNotNull(etag);
+
+        webTestClient.get()
+                .uri("/book/" + book.getId())
+                .header(HttpHeaders.IF_NONE_MATCH, "W/" + etag)
+                .exchange()
+                .expectStatus().isNotModified();
+
+        // версия общая для всех книг: изменение другой книги тоже делает ответ устаревшим
+        webTestClient.delete().uri("/book/" + other.getId()).exchange().expectStatus().isOk();
+
+        webTestClient.get()
+                .uri("/book/" + book.getId())
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Book.class).isEqualTo(book);
+        webTestClient.get()
+                .uri("/book/" + other.getId())
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectHeader().doesNotExist(HttpHeaders.ETAG);
+    }
+
+    @Test
+    void testGetAllBooksNotModifiedSince() throws InterruptedException {
+        post("/book", Map.of("name", "Book_1"), Book.class);
+        long lastModified = settledLastModified();
+
+        webTestClient.get()
+                .uri("/book")
+                .ifModifiedSince(utc(lastModified))
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().lastModified(lastModified);
+        webTestClient.get()
+                .uri("/book")
+                .ifModifiedSince(utc(lastModified - 24 * 60 * 60 * 1000))
+                .exchange()
+                .expectStatus().isOk();
+        // If-None-Match важнее If-Modified-Since
+        webTestClient.get()
+                .uri("/book")
+                .ifModifiedSince(utc(lastModified))
+                .header(HttpHeaders.IF_NONE_MATCH, "\"books-stale\"")
+                .exchange()
+                .expectStatus().isOk();
+
+        post("/book", Map.of("name", "Book_2"), Book.class);
+
+        webTestClient.get()
+                .uri("/book")
+                .ifModifiedSince(utc(lastModified))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<List<Book>>() {})
+                .value(books -> Assertions.assertEquals(2, books.size()));
+    }
+
+    private static ZonedDateTime utc(long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC);
+    }
+
+    /**
+     * Last-Modified приходит, только когда секунда последнего изменения прошла
+     */
+    private long settledLastModified() throws InterruptedException {
+        for (int attempt = 0; attempt < 30; attempt++) {
+            long lastModified = webTestClient.get()
+                    .uri("/book")
+                    .exchange()
+                    .expectStatus().isOk()
+                    .returnResult(String.class)
+                    .getResponseHeaders().getLastModified();
+            if (lastModified >= 0) {
+                return lastModified;
+            }
+            Thread.sleep(100);
+        }
+        return Assertions.fail("нет Last-Modified через 3 секунды после изменения");
+    }
+}
@@ -17,9 +17,11 @@ import com.example.library.JUnitSpringBootBase;
 import com.example.library.model.Book;
 import com.example.library.model.Issue;
 import com.example.library.model.Reader;
+import com.example.library.model.ReturnedIssue;
 import com.example.library.repo.BookRepository;
 import com.example.library.repo.IssueRepository;
 import com.example.library.repo.ReaderRepository;
+import com.example.library.repo.ReturnedIssueRepository;
 
 
 class IssueControllerTests extends JUnitSpringBootBase {
@@ -29,6 +31,8 @@ class IssueControllerTests extends JUnitSpringBootBase {
     @Autowired
     IssueRepository issueRepository;
     @Autowired
+    ReturnedIssueRepository returnedIssueRepository;
+    @Autowired
     BookRepository bookRepository;
     @Autowired
     ReaderRepository readerRepository;
@@ -49,6 +53,7 @@ class IssueControllerTests extends JUnitSpringBootBase {
         bookRepository.deleteAll();
         readerRepository.deleteAll();
         issueRepository.deleteAll();
+        returnedIssueRepository.deleteAll();
     }
 
     @Test
@@ -78,6 +83,99 @@ class IssueControllerTests extends JUnitSpringBootBase {
         }
     }
 
+    @Test
+    void testGetAllIssuesByPages() {
+        issueRepository.saveAll(List.of(
+                new Issue(1L, 1L, 1L, LocalDateTime.now()),
+                new Issue(3L, 3L, 3L, LocalDateTime.now())
+        ));
+        // возвращённая выдача лежит в истории, страницы собираются из обеих таблиц
+        returnedIssueRepository.save(new ReturnedIssue(2L, 2L, 2L, LocalDateTime.now(), LocalDateTime.now()));
+
+        List<JUnitIssueResponse> firstPage = webTestClient.get()
+                .uri("/issue?limit=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(PageResponses.NEXT_CURSOR_HEADER, "2")
+                .expectBody(new ParameterizedTypeReference<List<JUnitIssueResponse>>() {})
+                .returnResult()
+                .getResponseBody();
+
+        Assertions.assertNotNull(firstPage);
+        Assertions.assertEquals(List.of(1L, 2L), firstPage.stream().map(JUnitIssueResponse::getId).toList());
+
+        List<JUnitIssueResponse> lastPage = webTestClient.get()
+                .uri("/issue?after=2&limit=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist(PageResponses.NEXT_CURSOR_HEADER)
+                .expectBody(new ParameterizedTypeReference<List<JUnitIssueResponse>>() {})
+                .returnResult()
+                .getResponseBody();
+
+        Assertions.assertNotNull(lastPage);
+        Assertions.assertEquals(List.of(3L), lastPage.stream().map(JUnitIssueResponse::getId).toList());
+    }
+
+    @Test
+    void testGetReaderIssuesNewestFirstByPages() {
+        readerRepository.save(new Reader(1L, "Reader_1"));
+        issueRepository.saveAll(List.of(
+                new Issue(2L, 2L, 2L, LocalDateTime.now()),
+                new Issue(4L, 4L, 1L, LocalDateTime.now())
+        ));
+        returnedIssueRepository.saveAll(List.of(
+                new ReturnedIssue(1L, 1L, 1L, LocalDateTime.now(), LocalDateTime.now()),
+                new ReturnedIssue(3L, 3L, 1L, LocalDateTime.now(), LocalDateTime.now())
+        ));
+
+        List<JUnitIssueResponse> firstPage = webTestClient.get()
+                .uri("/reader/1/issue?limit=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(PageResponses.NEXT_CURSOR_HEADER, "3")
+                .expectBody(new ParameterizedTypeReference<List<JUnitIssueResponse>>() {})
+                .returnResult()
+                .getResponseBody();
+
+        Assertions.assertNotNull(firstPage);
+        Assertions.assertEquals(List.of(4L, 3L), firstPage.stream().map(JUnitIssueResponse::getId).toList());
+
+        List<JUnitIssueResponse> lastPage = webTestClient.get()
+                .uri("/reader/1/issue?before=3&limit=2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist(PageResponses.NEXT_CURSOR_HEADER)
+                .expectBody(new ParameterizedTypeReference<List<JUnitIssueResponse>>() {})
+                .returnResult()
+                .getResponseBody();
+
+        Assertions.assertNotNull(lastPage);
+        Assertions.assertEquals(List.of(1L), lastPage.stream().map(JUnitIssueResponse::getId).toList());
+    }
+
+    @Test
+    void testExportIssues() {
+        issueRepository.saveAll(List.of(
+                new Issue(1L, 1L, 1L, LocalDateTime.now()),
+                new Issue(2L, 2L, 2L, LocalDateTime.now())
+        ));
+
+        String responseBody = webTestClient.get()
+                .uri("/issue/export")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType("application/x-ndjson")
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+
+        Assertions.assertNotNull(responseBody);
+        List<String> lines = responseBody.lines().toList();
+        Assertions.assertEquals(2, lines.size());
+        Assertions.assertTrue(lines.get(0).contains("\"id\":1"));
+        Assertions.assertTrue(lines.get(1).contains("\"id\":2"));
+    }
+
     @Test
     void testFindByIdSuccess() {
         Issue expected = issueRepository.save(new Issue(1L, 1L, 1L, LocalDateTime.now()));
@@ -130,7 +228,7 @@ class IssueControllerTests extends JUnitSpringBootBase {
 
         Assertions.assertNotNull(responseBody);
         Assertions.assertNotNull(responseBody.getId());
-        Assertions.assertTrue(issueRepository.findById(request.getId()).isPresent());
+        Assertions.assertTrue(issueRepository.findById(responseBody.getId()).isPresent());
     }
 
     @Test
@@ -173,6 +271,70 @@ class IssueControllerTests extends JUnitSpringBootBase {
                 .expectStatus().isEqualTo(HttpStatus.CONFLICT);
     }
 
+    @Test
+    void testIssueAndReturnBulk() {
+        bookRepository.saveAll(List.of(
+                new Book(1L, "Book_1"),
+                new Book(2L, "Book_2"),
+                new Book(3L, "Book_3"),
+                new Book(4L, "Book_4")
+        ));
+        readerRepository.saveAll(List.of(
+                new Reader(1L, "Reader_1"),
+                new Reader(2L, "Reader_2")
+        ));
+        List<IssueRequest> requests = List.of(
+                issueRequest(1L, 1L),
+                issueRequest(1L, 2L),
+                issueRequest(1L, 3L),
+                issueRequest(2L, 1L),
+                issueRequest(2L, 99L)
+        );
+
+        List<BulkIssueResult> issued = webTestClient.post()
+                .uri("/issue/bulk")
+                .bodyValue(requests)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<List<BulkIssueResult>>() {})
+                .returnResult().getResponseBody();
+
+        Assertions.assertNotNull(issued);
+        Assertions.assertEquals(List.of(
+                BulkIssueResult.Status.CREATED,
+                BulkIssueResult.Status.CREATED,
+                BulkIssueResult.Status.LIMIT_EXCEEDED,
+                BulkIssueResult.Status.BOOK_UNAVAILABLE,
+                BulkIssueResult.Status.NOT_FOUND
+        ), issued.stream().map(BulkIssueResult::status).toList());
+        Assertions.assertEquals(2, issueRepository.count());
+
+        Long issueId = issued.get(0).issueId();
+        List<BulkIssueResult> returned = webTestClient.put()
+                .uri("/issue/bulk")
+                .bodyValue(List.of(issueId, issueId, 999L))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<List<BulkIssueResult>>() {})
+                .returnResult().getResponseBody();
+
+        Assertions.assertNotNull(returned);
+        Assertions.assertEquals(List.of(
+                BulkIssueResult.Status.RETURNED,
+                BulkIssueResult.Status.ALREADY_RETURNED,
+                BulkIssueResult.Status.NOT_FOUND
+        ), returned.stream().map(BulkIssueResult::status).toList());
+        Assertions.assertTrue(issueRepository.findById(issueId).isEmpty());
+        Assertions.assertNotNull(returnedIssueRepository.findById(issueId).orElseThrow().getReturned_at());
+    }
+
+    private static IssueRequest issueRequest(long readerId, long bookId) {
+        IssueRequest request = new IssueRequest();
+        request.setReaderId(readerId);
+        request.setBookId(bookId);
+        return request;
+    }
+
     @Test
     void testReturnBookSuccess() {
         Issue expected = issueRepository.save(new Issue(1L, 1L, 1L, LocalDateTime.now()));
@@ -0,0 +1,241 @@
+package com.example.library.api;
+
+import com.example.library.JUnitSpringBootBase;
+import com.example.library.model.Book;
+import com.example.library.model.Issue;
+import com.example.library.model.Reader;
+import com.example.library.repo.BookRepository;
+import com.example.library.repo.IssueRepository;
+import com.example.library.repo.ReaderRepository;
+import com.example.library.repo.ReturnedIssueRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
+
+/**
+ * API выдач в профиле reactive: {@link IssueHandler} и ReactiveIssueService поверх R2DBC
+ */
+@ActiveProfiles("reactive")
+// своя БД: контекст другой, а БД в памяти с тем же именем общая для всех контекстов в JVM
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:reactive",
+        "application.reactive.r2dbc-url=r2dbc:h2:mem:///reactive?options=DB_CLOSE_DELAY=-1"
+})
+class IssueHandlerTests extends JUnitSpringBootBase {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    IssueRepository issueRepository;
+    @Autowired
+    ReturnedIssueRepository returnedIssueRepository;
+    @Autowired
+    BookRepository bookRepository;
+    @Autowired
+    ReaderRepository readerRepository;
+
+    @Value("${application.max-allowed-books}")
+    long booksLimit;
+
+    @BeforeEach
+    void clean() {
+        bookRepository.deleteAll();
+        readerRepository.deleteAll();
+        issueRepository.deleteAll();
+        returnedIssueRepository.deleteAll();
+    }
+
+    @Test
+    void testIssueAndReturn() {
+        bookRepository.save(new Book(1L, "Book_1"));
+        readerRepository.save(new Reader(1L, "Reader_1"));
+
+        Issue issued = webTestClient.post()
+                .uri("/issue")
+                .bodyValue(request(1L, 1L))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Issue.class)
+                .returnResult().getResponseBody();
+        Assertions.assertNotNull(issued);
+        Assertions.assertEquals(1L, issued.getBookId());
+        Assertions.assertEquals(1L, issued.getReaderId());
+        Assertions.assertTrue(issueRepository.existsById(issued.getId()));
+
+        Issue returned = webTestClient.put()
+                .uri("/issue/" + issued.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Issue.class)
+                .returnResult().getResponseBody();
+        Assertions.assertNotNull(returned.getReturned_at());
+        Assertions.assertEquals(0, issueRepository.count());
+        Assertions.assertEquals(1, returnedIssueRepository.count());
+
+        // повторный возврат не меняет дату возврата
+        webTestClient.put()
+                .uri("/issue/" + issued.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Issue.class)
+                .value(again -> Assertions.assertEquals(returned.getReturned_at(), again.getReturned_at()));
+
+        // возвращённую книгу можно выдать снова
+        webTestClient.post()
+                .uri("/issue")
+                .bodyValue(request(1L, 1L))
+                .exchange()
+                .expectStatus().isCreated();
+    }
+
+    @Test
+    void testIssueNotFound() {
+        bookRepository.save(new Book(1L, "Book_1"));
+        readerRepository.save(new Reader(1L, "Reader_1"));
+
+        webTestClient.post()
+                .uri("/issue")
+                .bodyValue(request(1L, 2L))
+                .exchange()
+                .expectStatus().isNotFound();
+        webTestClient.post()
+                .uri("/issue")
+                .bodyValue(request(2L, 1L))
+                .exchange()
+                .expectStatus().isNotFound();
+        webTestClient.put()
+                .uri("/issue/1")
+                .exchange()
+                .expectStatus().isNotFound();
+        Assertions.assertEquals(0, issueRepository.count());
+    }
+
+    @Test
+    void testIssueOverReaderLimit() {
+        readerRepository.save(new Reader(1L, "Reader_1"));
+        for (long i = 1; i <= booksLimit + 1; i++) {
+            bookRepository.save(new Book(i, "Book_" + i));
+        }
+        for (long i = 1; i <= booksLimit; i++) {
+            webTestClient.post()
+                    .uri("/issue")
+                    .bodyValue(request(1L, i))
+                    .exchange()
+                    .expectStatus().isCreated();
+        }
+
+        webTestClient.post()
+                .uri("/issue")
+                .bodyValue(request(1L, booksLimit + 1))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+        Assertions.assertEquals(booksLimit, issueRepository.count());
+    }
+
+    @Test
+    void testIssueOfIssuedBook() {
+        bookRepository.save(new Book(1L, "Book_1"));
+        readerRepository.save(new Reader(1L, "Reader_1"));
+        readerRepository.save(new Reader(2L, "Reader_2"));
+        webTestClient.post()
+                .uri("/issue")
+                .bodyValue(request(1L, 1L))
+                .exchange()
+                .expectStatus().isCreated();
+
+        webTestClient.post()
+                .uri("/issue")
+                .bodyValue(request(2L, 1L))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+        Assertions.assertEquals(1, issueRepository.count());
+    }
+
+    @Test
+    void testParallelIssuesRespectReaderLimit() throws Exception {
+        readerRepository.save(new Reader(1L, "Reader_1"));
+        for (long i = 1; i <= THREADS; i++) {
+            bookRepository.save(new Book(i, "Book_" + i));
+        }
+
+        long issued = issueInParallel(i -> request(1L, i));
+
+        Assertions.assertEquals(booksLimit, issued);
+        Assertions.assertEquals(booksLimit, issueRepository.count());
+    }
+
+    @Test
+    void testParallelIssuesOfSameBook() throws Exception {
+        bookRepository.save(new Book(1L, "Book_1"));
+        for (long i = 1; i <= THREADS; i++) {
+            readerRepository.save(new Reader(i, "Reader_" + i));
+        }
+
+        long issued = issueInParallel(i -> request(i, 1L));
+
+        Assertions.assertEquals(1, issued);
+        Assertions.assertEquals(1, issueRepository.count());
+    }
+
+    /**
+     * @return сколько запросов из THREADS одновременных получили 201
+     */
+    private long issueInParallel(LongFunction<IssueRequest> requests) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<HttpStatusCode>> statuses = new ArrayList<>();
+            for (long i = 1; i <= THREADS; i++) {
+                IssueRequest request = requests.apply(i);
+                Callable<HttpStatusCode> call = () -> {
+                    start.await();
+                    return webTestClient.post()
+                            .uri("/issue")
+                            .bodyValue(request)
+                            .exchange()
+                            .returnResult(Void.class)
+                            .getStatus();
+                };
+                statuses.add(executor.submit(call));
+            }
+            start.countDown();
+            long created = 0;
+            for (Future<HttpStatusCode> status : statuses) {
+                HttpStatusCode code = status.get();
+                Assertions.assertTrue(code.equals(HttpStatus.CREATED) || code.equals(HttpStatus.CONFLICT),
+                        "неожиданный ответ " + code);
+                if (code.equals(HttpStatus.CREATED)) {
+                    created++;
+                }
+            }
+            return created;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static IssueRequest request(long readerId, long bookId) {
+        IssueRequest request = new IssueRequest();
+        request.setReaderId(readerId);
+        request.setBookId(bookId);
+        return request;
+    }
+}
@@ -7,19 +7,27 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import java.util.List;
 import java.util.Objects;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import java.time.LocalDateTime;
 import java.util.NoSuchElementException;
 import com.example.library.JUnitSpringBootBase;
+import com.example.library.id.IdAllocator;
+import com.example.library.id.IdSequence;
 import com.example.library.model.Issue;
 import com.example.library.model.Reader;
 import com.example.library.repo.ReaderRepository;
 import com.example.library.service.IssueService;
+import com.example.library.service.KeysetPage;
 
 
 class ReaderControllerTests extends JUnitSpringBootBase {
@@ -30,6 +38,8 @@ class ReaderControllerTests extends JUnitSpringBootBase {
     ReaderRepository readerRepository;
     @Autowired
     JdbcTemplate jdbcTemplate;
+    @Autowired
+    IdAllocator idAllocator;
 
     @MockBean
     private IssueService issueService;
@@ -72,6 +82,32 @@ class ReaderControllerTests extends JUnitSpringBootBase {
         }
     }
 
+    @Test
+    void testGetAllReadersWithoutLimitReturnsFirstPage() {
+        long last = KeysetPage.DEFAULT_LIMIT + 1;
+        readerRepository.saveAll(LongStream.rangeClosed(1, last)
+                .mapToObj(id -> new Reader(id, "Reader_" + id))
+                .toList());
+
+        List<Reader> firstPage = webTestClient.get()
+                .uri("/reader")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("X-Next-Cursor", String.valueOf(KeysetPage.DEFAULT_LIMIT))
+                .expectBody(new ParameterizedTypeReference<List<Reader>>() {})
+                .returnResult().getResponseBody();
+        Assertions.assertEquals(KeysetPage.DEFAULT_LIMIT, firstPage.size());
+
+        List<Reader> lastPage = webTestClient.get()
+                .uri("/reader?after=" + KeysetPage.DEFAULT_LIMIT)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist("X-Next-Cursor")
+                .expectBody(new ParameterizedTypeReference<List<Reader>>() {})
+                .returnResult().getResponseBody();
+        Assertions.assertEquals(List.of(new Reader(last, "Reader_" + last)), lastPage);
+    }
+
     @Test
     void testFindByIdSuccess() {
         Reader expected = readerRepository.save(new Reader(1L, "Reader_1"));
@@ -88,6 +124,63 @@ class ReaderControllerTests extends JUnitSpringBootBase {
         Assertions.assertEquals(expected.getName(), responseBody.getName());
     }
 
+    @Test
+    void testFindByIdSeesRepositoryChanges() {
+        webTestClient.get()
+                .uri("/reader/1")
+                .exchange()
+                .expectStatus().isNotFound();
+
+        readerRepository.save(new Reader(1L, "Reader_1"));
+
+        webTestClient.get()
+                .uri("/reader/1")
+                .exchange()
+                .expectStatus().isOk();
+
+        readerRepository.deleteAll();
+
+        webTestClient.get()
+                .uri("/reader/1")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void testGetAllReadersNotModified() {
+        readerRepository.save(new Reader(1L, "Reader_1"));
+
+        String etag = webTestClient.get()
+                .uri("/reader")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().cacheControl(CacheControl.noCache())
+                .returnResult(String.class)
+                .getResponseHeaders().getETag();
+        Assertions.assertNotNull(etag);
+
+        webTestClient.get()
+                .uri("/reader")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, etag)
+                .expectBody().isEmpty();
+
+        // запись в обход сервиса тоже меняет версию
+        readerRepository.save(new Reader(2L, "Reader_2"));
+
+        List<Reader> readers = webTestClient.get()
+                .uri("/reader")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value(HttpHeaders.ETAG, value -> Assertions.assertNotEquals(etag, value))
+                .expectBody(new ParameterizedTypeReference<List<Reader>>() {})
+                .returnResult().getResponseBody();
+        Assertions.assertEquals(2, readers.size());
+    }
+
     @Test
     void testFindByIdNotFound() {
         readerRepository.save(new Reader(1L, "Reader_1"));
@@ -117,7 +210,7 @@ class ReaderControllerTests extends JUnitSpringBootBase {
 
         Assertions.assertNotNull(responseBody);
         Assertions.assertNotNull(responseBody.getId());
-        Assertions.assertTrue(readerRepository.findById(request.getId()).isPresent());
+        Assertions.assertTrue(readerRepository.findById(responseBody.getId()).isPresent());
     }
 
     @Test
@@ -130,6 +223,75 @@ class ReaderControllerTests extends JUnitSpringBootBase {
                 .expectBody(IllegalArgumentException.class);
     }
 
+    @Test
+    void testSaveReaderDuplicate() {
+        JUnitReaderResponse request = new JUnitReaderResponse();
+        request.setName("Reader_1");
+
+        webTestClient.post()
+                .uri("/reader")
+                .bodyValue(request)
+                .exchange()
+                .expectStatus().isCreated();
+
+        webTestClient.post()
+                .uri("/reader")
+                .bodyValue(request)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+
+        Assertions.assertEquals(1, readerRepository.count());
+    }
+
+    @Test
+    void testSaveReaderIdCollisionDoesNotOverwrite() {
+        // следующий id, который выдаст распределитель, уже занят записью в обход приложения
+        long taken = idAllocator.nextId(IdSequence.READERS) + 1;
+        jdbcTemplate.update("insert into readers (id, name) values (?, ?)", taken, "Reader_1");
+
+        JUnitReaderResponse request = new JUnitReaderResponse();
+        request.setName("Reader_2");
+        webTestClient.post()
+                .uri("/reader")
+                .bodyValue(request)
+                .exchange()
+                .expectStatus().is5xxServerError();
+
+        Assertions.assertEquals("Reader_1", readerRepository.findById(taken).orElseThrow().getName());
+        Assertions.assertEquals(1, readerRepository.count());
+    }
+
+    @Test
+    void testSaveReadersBulk() {
+        readerRepository.save(new Reader(1L, "Reader_1"));
+        List<JUnitReaderResponse> request = Stream.of("Reader_1", "Reader_2", "Reader_2", "", "Reader_3")
+                .map(name -> {
+                    JUnitReaderResponse reader = new JUnitReaderResponse();
+                    reader.setName(name);
+                    return reader;
+                })
+                .toList();
+
+        List<BulkItemResult> responseBody = webTestClient.post()
+                .uri("/reader/bulk")
+                .bodyValue(request)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<List<BulkItemResult>>() {})
+                .returnResult().getResponseBody();
+
+        Assertions.assertNotNull(responseBody);
+        Assertions.assertEquals(List.of(
+                BulkItemResult.Status.DUPLICATE,
+                BulkItemResult.Status.CREATED,
+                BulkItemResult.Status.DUPLICATE,
+                BulkItemResult.Status.INVALID,
+                BulkItemResult.Status.CREATED
+        ), responseBody.stream().map(BulkItemResult::status).toList());
+        Assertions.assertEquals(responseBody.get(1).id(), readerRepository.findReaderByName("Reader_2").getId());
+        Assertions.assertEquals(responseBody.get(4).id(), readerRepository.findReaderByName("Reader_3").getId());
+    }
+
     @Test
     void testDeleteReaderSuccess() {
         readerRepository.saveAll(List.of(
@@ -171,7 +333,7 @@ class ReaderControllerTests extends JUnitSpringBootBase {
                 new Issue(2L, 2L, 1L, LocalDateTime.now())
         );
 
-        Mockito.when(issueService.getAllIssuesByReader(reader.getId())).thenReturn(issueList);
+        Mockito.when(issueService.getReaderIssues(reader.getId(), null, null)).thenReturn(new KeysetPage<>(issueList, null));
 
         List<Issue> responseBody = webTestClient.get()
                 .uri("/reader/" + reader.getId() + "/issue")
@@ -197,7 +359,7 @@ class ReaderControllerTests extends JUnitSpringBootBase {
         Long nonExisting = jdbcTemplate.queryForObject("select max(id) from readers", Long.class);
         nonExisting++;
 
-        Mockito.when(issueService.getAllIssuesByReader(nonExisting)).thenThrow(NoSuchElementException.class);
+        Mockito.when(issueService.getReaderIssues(nonExisting, null, null)).thenThrow(NoSuchElementException.class);
 
         webTestClient.get()
                 .uri("/reader/" + nonExisting + "/issue")
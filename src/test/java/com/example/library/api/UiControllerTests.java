@@ -0,0 +1,114 @@
+package com.example.library.api;
+
+import com.example.library.JUnitSpringBootBase;
+import com.example.library.model.Book;
+import com.example.library.model.Issue;
+import com.example.library.model.Reader;
+import com.example.library.model.ReaderIssue;
+import com.example.library.repo.BookRepository;
+import com.example.library.repo.IssueRepository;
+import com.example.library.repo.ReaderRepository;
+import com.example.library.repo.ReturnedIssueRepository;
+import com.example.library.service.IssueService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+class UiControllerTests extends JUnitSpringBootBase {
+
+    private static final Pattern BOOK_LINE =
+            Pattern.compile("Book id: <span>(\\d+)</span>;\\s*Book title: <span>([^<]*)</span>");
+
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    IssueService issueService;
+    @Autowired
+    IssueRepository issueRepository;
+    @Autowired
+    ReturnedIssueRepository returnedIssueRepository;
+    @Autowired
+    BookRepository bookRepository;
+    @Autowired
+    ReaderRepository readerRepository;
+
+    @BeforeEach
+    void clean() {
+        bookRepository.deleteAll();
+        readerRepository.deleteAll();
+        issueRepository.deleteAll();
+        returnedIssueRepository.deleteAll();
+    }
+
+    /**
+     * Открытые и возвращённые выдачи вперемешку, от новых к старым. Выдачи удалённых книг остаются в списке
+     * без названия: и в открытых выдачах, и в истории книги присоединяются левым соединением
+     */
+    @Test
+    void testReaderHistoryWithBookNamesNewestFirst() {
+        Reader reader = post("/reader", Map.of("name", "Reader"), Reader.class);
+        Book deletedReturned = post("/book", Map.of("name", "Удалённая возвращённая"), Book.class);
+        Book returned = post("/book", Map.of("name", "Возвращённая"), Book.class);
+        Book open = post("/book", Map.of("name", "На руках"), Book.class);
+        Book deletedOpen = post("/book", Map.of("name", "Удалённая на руках"), Book.class);
+
+        Issue first = issueAndReturn(reader, deletedReturned);
+        Issue second = issueAndReturn(reader, returned);
+        Issue third = issue(reader, open);
+        Issue fourth = issue(reader, deletedOpen);
+        delete(deletedReturned);
+        delete(deletedOpen);
+
+        List<ReaderIssue> history = issueService.getReaderHistory(reader.getId(), null);
+        Assertions.assertEquals(List.of(fourth.getId(), third.getId(), second.getId(), first.getId()),
+                history.stream().map(ReaderIssue::getId).toList());
+        Assertions.assertEquals(Arrays.asList(null, "На руках", "Возвращённая", null),
+                history.stream().map(ReaderIssue::getBookName).toList());
+        Assertions.assertEquals(List.of(false, false, true, true),
+                history.stream().map(it -> it.getReturned_at() != null).toList());
+
+        String page = webTestClient.get().uri("/ui/reader/" + reader.getId()).exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).returnResult().getResponseBody();
+        List<String> lines = new ArrayList<>();
+        Matcher matcher = BOOK_LINE.matcher(page);
+        while (matcher.find()) {
+            lines.add(matcher.group(1) + ":" + matcher.group(2));
+        }
+        Assertions.assertEquals(List.of(deletedOpen.getId() + ":", open.getId() + ":На руках",
+                returned.getId() + ":Возвращённая", deletedReturned.getId() + ":"), lines);
+    }
+
+    @Test
+    void testReaderHistoryLimit() {
+        Reader reader = post("/reader", Map.of("name", "Reader"), Reader.class);
+        Book older = post("/book", Map.of("name", "Старая"), Book.class);
+        Book newer = post("/book", Map.of("name", "Новая"), Book.class);
+        issueAndReturn(reader, older);
+        Issue latest = issue(reader, newer);
+
+        List<ReaderIssue> history = issueService.getReaderHistory(reader.getId(), 1);
+
+        Assertions.assertEquals(List.of(latest.getId()), history.stream().map(ReaderIssue::getId).toList());
+        Assertions.assertEquals("Новая", history.get(0).getBookName());
+    }
+
+    private Issue issueAndReturn(Reader reader, Book book) {
+        Issue issue = issue(reader, book);
+        webTestClient.put().uri("/issue/" + issue.getId()).exchange().expectStatus().isOk();
+        return issue;
+    }
+
+    private void delete(Book book) {
+        webTestClient.delete().uri("/book/" + book.getId()).exchange().expectStatus().isOk();
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.library.aspect;
+
+import com.example.library.JUnitSpringBootBase;
+import com.example.library.api.IssueRequest;
+import com.example.library.model.Book;
+import com.example.library.model.Reader;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Тест без @AutoConfigureObservability получает только SimpleMeterRegistry, без /actuator/prometheus
+ */
+// своя БД и свой контекст: таймеры накапливаются за всё время жизни контекста, экспорт метрик включён
+@AutoConfigureObservability(tracing = false)
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:timer")
+class TimerAspectTests extends JUnitSpringBootBase {
+
+    private static final String SUCCESS = "class=\"IssueService\",exception=\"none\",method=\"issue\",outcome=\"success\"";
+    private static final String ERROR =
+            "class=\"IssueService\",exception=\"IllegalStateException\",method=\"issue\",outcome=\"error\"";
+
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    void testSuccessAndFailureAreTimedAndExported() {
+        Reader reader = post("/reader", Map.of("name", "Reader_1"), Reader.class);
+        Reader other = post("/reader", Map.of("name", "Reader_2"), Reader.class);
+        Book book = post("/book", Map.of("name", "Book_1"), Book.class);
+        issue(reader, book);
+        // книга уже выдана: IssueService.issue бросает IllegalStateException, контроллер отвечает 409
+        IssueRequest request = new IssueRequest();
+        request.setReaderId(other.getId());
+        request.setBookId(book.getId());
+        webTestClient.post().uri("/issue").bodyValue(request).exchange().expectStatus().isEqualTo(409);
+
+        Assertions.assertEquals(1, timer("success", "none").count());
+        Assertions.assertEquals(1, timer("error", "IllegalStateException").count());
+
+        String scrape = webTestClient.get().uri("/actuator/prometheus").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).returnResult().getResponseBody();
+        for (String tags : List.of(SUCCESS, ERROR)) {
+            for (String quantile : List.of("0.5", "0.95", "0.99")) {
+                assertContains(scrape, "library_method_timer_seconds{" + tags + ",quantile=\"" + quantile + "\",}");
+            }
+            for (String le : List.of("0.005", "0.01", "0.05", "0.1", "0.5", "1.0")) {
+                assertContains(scrape, "library_method_timer_seconds_bucket{" + tags + ",le=\"" + le + "\",} ");
+            }
+            assertContains(scrape, "library_method_timer_seconds_count{" + tags + ",} 1.0");
+        }
+    }
+
+    private io.micrometer.core.instrument.Timer timer(String outcome, String exception) {
+        return meterRegistry.get(TimerAspect.METRIC_NAME)
+                .tags("class", "IssueService", "method", "issue", "outcome", outcome, "exception", exception)
+                .timer();
+    }
+
+    private static void assertContains(String scrape, String line) {
+        Assertions.assertTrue(scrape.contains(line), "Нет строки в /actuator/prometheus: " + line);
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.library.eventlog;
+
+import com.example.library.JUnitSpringBootBase;
+import com.example.library.model.Book;
+import com.example.library.model.Issue;
+import com.example.library.model.Reader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+// свой контекст с включённым журналом событий и своя БД: тест восстанавливает её из журнала
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:eventlog",
+        "application.event-log.enabled=true",
+        "application.event-log.path=target/event-log-tests/${random.uuid}",
+        "application.event-log.segment-size=64KB",
+        "application.event-log.snapshot-on-shutdown=false"})
+class EventLogTests extends JUnitSpringBootBase {
+
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    EventLogPersistence eventLogPersistence;
+    @Autowired
+    DataSource dataSource;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void clean() {
+        // в обход JPA, чтобы очистка не попадала в журнал
+        jdbcTemplate.update("delete from issues");
+        jdbcTemplate.update("delete from issue_history");
+        jdbcTemplate.update("delete from books");
+        jdbcTemplate.update("delete from readers");
+    }
+
+    @Test
+    void testRestoresSnapshotAndLogTailAfterRestart() throws Exception {
+        Reader reader = post("/reader", Map.of("name", "Reader_1"), Reader.class);
+        Book kept = post("/book", Map.of("name", "Book_1"), Book.class);
+        Book deleted = post("/book", Map.of("name", "Book_2"), Book.class);
+        Issue returned = issue(reader, kept);
+        webTestClient.put().uri("/issue/" + returned.getId()).exchange().expectStatus().isOk();
+        eventLogPersistence.snapshot();
+
+        // хвост после снимка, в том числе по нескольким сегментам
+        webTestClient.delete().uri("/book/" + deleted.getId()).exchange().expectStatus().isOk();
+        webTestClient.post()
+                .uri("/book/bulk")
+                .bodyValue(IntStream.range(0, 2_000).mapToObj(i -> Map.of("name", "Tail_" + i)).toList())
+                .exchange()
+                .expectStatus().isOk();
+        Issue open = issue(reader, kept);
+        List<Map<String, Object>> expected = dump();
+
+        clean();
+        restart((Path) ReflectionTestUtils.getField(eventLogPersistence, "path"));
+
+        Assertions.assertEquals(expected, dump());
+        Assertions.assertNotNull(jdbcTemplate.queryForObject("select returned_at from issue_history where id = ?",
+                LocalDateTime.class, returned.getId()));
+        Assertions.assertEquals(1, jdbcTemplate.queryForObject("select count(*) from issues where id = ?",
+                Long.class, open.getId()));
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject("select count(*) from books where id = ?",
+                Long.class, deleted.getId()));
+    }
+
+    @Test
+    void testReplayStopsAtTornTailAndHandlesReusedNames() throws Exception {
+        Path directory = Files.createTempDirectory(Path.of("target"), "event-log-recovery");
+        LocalDateTime issuedAt = LocalDateTime.of(2024, 5, 1, 10, 0, 0, 123_456_000);
+        // снимок сделан позже записи 1: в нём имя уже перешло к книге 2
+        Snapshot.write(directory, 1, sink -> {
+            sink.book(2, "Name");
+            sink.reader(1, "Reader_1");
+        });
+        Path segment = directory.resolve(String.format("%020d", 1) + SegmentedLog.SUFFIX);
+        try (SegmentedLog log = new SegmentedLog(directory, DataSize.ofKilobytes(64).toBytes(), false)) {
+            log.recover(0, record -> {
+            });
+            log.append(LogRecord.book(new Book(1, "Name")));
+            log.append(LogRecord.book(new Book(1, "Name")));
+            log.append(LogRecord.bookRemoved(1));
+            log.append(LogRecord.book(new Book(2, "Name")));
+            Issue issue = new Issue(10, 2, 1, issuedAt);
+            log.append(LogRecord.issue(issue));
+            issue.setReturned_at(issuedAt.plusDays(14));
+            log.append(LogRecord.issue(issue));
+        }
+        // последняя запись (возврат) дописана не полностью
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            long last = 0;
+            for (long position = 0; ; position += 2 * Integer.BYTES + length.flip().getInt()) {
+                channel.read(length.clear(), position);
+                if (length.getInt(0) == 0) {
+                    break;
+                }
+                last = position;
+            }
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), last + 2 * Integer.BYTES + 20);
+        }
+
+        restart(directory);
+
+        Assertions.assertEquals(List.of(Map.of("ID", 2L, "NAME", "Name")), jdbcTemplate.queryForList("select * from books"));
+        Assertions.assertEquals(issuedAt, jdbcTemplate.queryForObject("select issued_at from issues where id = 10",
+                LocalDateTime.class));
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject("select count(*) from issue_history", Long.class));
+    }
+
+    @Test
+    void testReturnLoggedBeforeIssueStaysReturned() throws Exception {
+        Path directory = Files.createTempDirectory(Path.of("target"), "event-log-order");
+        LocalDateTime issuedAt = LocalDateTime.of(2024, 5, 1, 10, 0);
+        try (SegmentedLog log = new SegmentedLog(directory, DataSize.ofKilobytes(64).toBytes(), false)) {
+            log.recover(0, record -> {
+            });
+            // события публикуются после снятия блокировок: возврат из другого запроса может опередить выдачу
+            Issue issue = new Issue(10, 2, 1, issuedAt);
+            issue.setReturned_at(issuedAt.plusDays(1));
+            log.append(LogRecord.issue(issue));
+            issue.setReturned_at(null);
+            log.append(LogRecord.issue(issue));
+        }
+
+        restart(directory);
+
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject("select count(*) from issues", Long.class));
+        Assertions.assertEquals(issuedAt.plusDays(1), jdbcTemplate.queryForObject(
+                "select returned_at from issue_history where id = 10", LocalDateTime.class));
+    }
+
+    private void restart(Path directory) throws Exception {
+        EventLogPersistence restarted = new EventLogPersistence(dataSource, jdbcTemplate, Optional.empty(),
+                new SimpleMeterRegistry(), directory, DataSize.ofKilobytes(64), 1_000_000, false, false);
+        try {
+            restarted.afterPropertiesSet();
+        } finally {
+            restarted.destroy();
+        }
+    }
+
+    private List<Map<String, Object>> dump() {
+        return List.of(
+                Map.of("books", jdbcTemplate.queryForList("select * from books order by id")),
+                Map.of("readers", jdbcTemplate.queryForList("select * from readers order by id")),
+                Map.of("issues", jdbcTemplate.queryForList("select * from issues order by id")),
+                Map.of("issue_history", jdbcTemplate.queryForList("select * from issue_history order by id")));
+    }
+}
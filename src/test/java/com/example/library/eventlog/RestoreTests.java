@@ -0,0 +1,81 @@
+package com.example.library.eventlog;
+
+import com.example.library.Application;
+import com.example.library.TestDataGenerator;
+import com.example.library.model.Issue;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Время до готовности при старте из снимка и хвоста журнала событий. Запускается только явно:
+ * <p>
+ * mvn test -Dtest=RestoreTests -Drestoretest=true [-Drestoretest.issues=5000000 -Drestoretest.tail=1000000
+ * -Drestoretest.max-seconds=200] -DargLine=-Xmx4g
+ * <p>
+ * По умолчанию - самый большой размер, на котором тест запускался: 5 млн выдач и хвост 1 млн записей стартовали
+ * за 167 с на одном ядре, граница взята с запасом 20%.
+ * <p>
+ * Снимок библиотеки из TestDataGenerator и хвост из tail выдач и возвратов пишутся напрямую в файлы, затем
+ * приложение стартует с этим каталогом. Падает, если старт занял больше max-seconds или восстановлено не всё
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "restoretest", matches = "true")
+class RestoreTests {
+
+    @Test
+    void testTimeToReadyWithinBound() throws Exception {
+        long issues = Long.getLong("restoretest.issues", 5_000_000);
+        long tail = Long.getLong("restoretest.tail", 1_000_000);
+        double maxSeconds = Double.parseDouble(System.getProperty("restoretest.max-seconds", "200"));
+        Path directory = Files.createTempDirectory(Path.of("target"), "restore-test");
+
+        TestDataGenerator.Settings settings = TestDataGenerator.Settings.scaled(issues, 42, 2);
+        long[] lastIssueId = {0};
+        Snapshot.write(directory, 0, sink -> lastIssueId[0] = new TestDataGenerator(settings).generate(sink));
+        SplittableRandom random = new SplittableRandom(42);
+        try (SegmentedLog log = new SegmentedLog(directory, DataSize.ofMegabytes(64).toBytes(), false)) {
+            log.recover(0, record -> {
+            });
+            // половина хвоста - новые выдачи, половина - их возвраты
+            LocalDateTime now = LocalDateTime.now();
+            for (long i = 1; i <= tail / 2; i++) {
+                Issue issue = new Issue(lastIssueId[0] + i, 1 + random.nextInt(settings.books()),
+                        1 + random.nextInt(settings.readers()), now);
+                log.append(LogRecord.issue(issue));
+                issue.setReturned_at(now.plusDays(14));
+                log.append(LogRecord.issue(issue));
+            }
+        }
+
+        long start = System.nanoTime();
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:restore",
+                "--application.event-log.enabled=true",
+                "--application.event-log.path=" + directory,
+                "--application.event-log.snapshot-on-shutdown=false")) {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            log.info(String.format(Locale.ROOT, "Старт с %d выдачами в снимке и %d записями в хвосте: %.1f с",
+                    issues, tail, seconds));
+
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            Assertions.assertEquals(lastIssueId[0] + tail / 2,
+                    jdbcTemplate.queryForObject(
+                    "select (select count(*) from issues) + (select count(*) from issue_history)", Long.class));
+            Assertions.assertTrue(seconds <= maxSeconds,
+                    String.format(Locale.ROOT, "Старт занял %.1f с, больше %.1f с", seconds, maxSeconds));
+        }
+    }
+}
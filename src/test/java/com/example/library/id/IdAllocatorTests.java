@@ -0,0 +1,115 @@
+package com.example.library.id;
+
+import com.example.library.JUnitSpringBootBase;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+
+// своя БД и свой контекст: тест пересоздаёт последовательность книг и пишет в books произвольные id
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:ids")
+class IdAllocatorTests extends JUnitSpringBootBase {
+
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 1000;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void clean() {
+        jdbcTemplate.execute("drop sequence if exists " + IdSequence.BOOKS.getSequence());
+        jdbcTemplate.update("delete from books");
+    }
+
+    @Test
+    void testConcurrentIdsAreUniqueForAtomicAllocator() throws Exception {
+        List<Long> ids = allocateConcurrently(new AtomicIdAllocator(jdbcTemplate));
+
+        Assertions.assertEquals(THREADS * IDS_PER_THREAD, new HashSet<>(ids).size());
+    }
+
+    @Test
+    void testConcurrentIdsAreUniqueForBlockAllocator() throws Exception {
+        // маленький блок, чтобы потоки часто одновременно упирались в его конец
+        List<Long> ids = allocateConcurrently(new BlockIdAllocator(jdbcTemplate, 10));
+
+        Assertions.assertEquals(THREADS * IDS_PER_THREAD, new HashSet<>(ids).size());
+    }
+
+    @Test
+    void testBlockRollsOverAtBlockSize() {
+        BlockIdAllocator allocator = new BlockIdAllocator(jdbcTemplate, 3);
+
+        List<Long> ids = LongStream.range(0, 7).map(i -> allocator.nextId(IdSequence.BOOKS)).boxed().toList();
+
+        Assertions.assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L), ids);
+        // седьмой id открыл третий блок 7..9, поэтому следующий экземпляр начинает с 10
+        Assertions.assertEquals(10, new BlockIdAllocator(jdbcTemplate, 3).nextId(IdSequence.BOOKS));
+    }
+
+    @Test
+    void testInstancesOnOneDatabaseAllocateDisjointIdsAboveMaxId() throws Exception {
+        jdbcTemplate.update("insert into books (id, name) values (500, 'Книга 500')");
+        BlockIdAllocator first = new BlockIdAllocator(jdbcTemplate, 10);
+        BlockIdAllocator second = new BlockIdAllocator(jdbcTemplate, 10);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            Future<List<Long>> firstIds = executor.submit(allocate(first, start));
+            Future<List<Long>> secondIds = executor.submit(allocate(second, start));
+            start.countDown();
+
+            Set<Long> ids = new HashSet<>(firstIds.get());
+            ids.addAll(secondIds.get());
+            Assertions.assertEquals(2 * IDS_PER_THREAD, ids.size());
+            Assertions.assertTrue(ids.stream().allMatch(id -> id > 500), "id не выше max(id) = 500");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<Long> allocateConcurrently(IdAllocator allocator) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<Long>>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(allocate(allocator, start)));
+            }
+            start.countDown();
+            List<Long> ids = new ArrayList<>();
+            for (Future<List<Long>> future : futures) {
+                ids.addAll(future.get());
+            }
+            return ids;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Callable<List<Long>> allocate(IdAllocator allocator, CountDownLatch start) {
+        return () -> {
+            start.await();
+            List<Long> ids = new ArrayList<>(IDS_PER_THREAD);
+            for (int i = 0; i < IDS_PER_THREAD; i++) {
+                ids.add(allocator.nextId(IdSequence.BOOKS));
+            }
+            return ids;
+        };
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.library.index;
+
+import com.example.library.JUnitSpringBootBase;
+import com.example.library.model.Book;
+import com.example.library.repo.BookRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+class BookSearchIndexTests extends JUnitSpringBootBase {
+
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    BookRepository bookRepository;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void clean() {
+        // удаление через JPA убирает книги других тестов и из индекса
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    void testPrefixCaseInsensitiveRankedSearch() {
+        Book war = post("Война и мир");
+        Book warriors = post("Воины света: война миров");
+        Book peace = post("Мир труда");
+        post("Анна Каренина");
+
+        Assertions.assertEquals(List.of(war, warriors), search("ВОЙНА"));
+        // "мир" целиком совпадает только в первой книге, "вой" - префикс в обеих
+        Assertions.assertEquals(List.of(war, warriors), search("вой мир"));
+        Assertions.assertEquals(List.of(war, peace, warriors), search("мир"));
+        Assertions.assertEquals(List.of(war), search("мир", 1));
+        Assertions.assertEquals(List.of(), search("война каренина"));
+        Assertions.assertEquals(List.of(), search("  ,"));
+
+        webTestClient.delete().uri("/book/" + war.getId()).exchange().expectStatus().isOk();
+        Assertions.assertEquals(List.of(warriors), search("война"));
+    }
+
+    @Test
+    void testRolledBackWritesDoNotReachIndex() {
+        Book kept = post("Kept title");
+        transactionTemplate.executeWithoutResult(status -> {
+            bookRepository.saveAndFlush(new Book(kept.getId() + 1000, "Phantom title"));
+            bookRepository.deleteById(kept.getId());
+            bookRepository.flush();
+            status.setRollbackOnly();
+        });
+
+        Assertions.assertEquals(List.of(), search("phantom"));
+        Assertions.assertEquals(List.of(kept), search("kept"));
+    }
+
+    private List<Book> search(String query) {
+        return search(query, null);
+    }
+
+    private List<Book> search(String query, Integer limit) {
+        return webTestClient.get()
+                .uri(uriBuilder -> uriBuilder.path("/book/search")
+                        .queryParam("q", query)
+                        .queryParamIfPresent("limit", Optional.ofNullable(limit))
+                        .build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<List<Book>>() {
+                })
+                .returnResult().getResponseBody();
+    }
+
+    private Book post(String name) {
+        return post("/book", Map.of("name", name), Book.class);
+    }
+}
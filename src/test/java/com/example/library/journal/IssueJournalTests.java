@@ -0,0 +1,312 @@
+package com.example.library.journal;
+
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import com.example.library.JUnitSpringBootBase;
+import com.example.library.api.BulkIssueResult;
+import com.example.library.api.IssueRequest;
+import com.example.library.model.Book;
+import com.example.library.model.Issue;
+import com.example.library.model.Reader;
+import com.example.library.model.ReturnedIssue;
+import com.example.library.repo.BookRepository;
+import com.example.library.repo.IssueRepository;
+import com.example.library.repo.ReaderRepository;
+import com.example.library.repo.ReturnedIssueRepository;
+import com.example.library.service.IssueService;
+import io.micrometer.core.instrument.MeterRegistry;
+
+
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:journal",
+        "application.journal.enabled=true",
+        "application.journal.path=target/journal-tests/${random.uuid}/issues.journal"})
+class IssueJournalTests extends JUnitSpringBootBase {
+
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    IssueJournal issueJournal;
+    @Autowired
+    IssueRepository issueRepository;
+    @Autowired
+    ReturnedIssueRepository returnedIssueRepository;
+    @Autowired
+    BookRepository bookRepository;
+    @Autowired
+    ReaderRepository readerRepository;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+    @Autowired
+    IssueService issueService;
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void clean() {
+        issueJournal.awaitApplied();
+        bookRepository.deleteAll();
+        readerRepository.deleteAll();
+        issueRepository.deleteAll();
+        returnedIssueRepository.deleteAll();
+    }
+
+    @Test
+    void testJournaledIssuesCountTowardsLimitAndReachDatabase() {
+        readerRepository.save(new Reader(1L, "Reader_1"));
+        for (long i = 1; i <= 3; i++) {
+            bookRepository.save(new Book(i, "Book_" + i));
+        }
+
+        Issue first = issue(1L, 1L, HttpStatus.CREATED);
+        issue(1L, 1L, HttpStatus.CONFLICT);
+        issue(1L, 2L, HttpStatus.CREATED);
+        issue(1L, 3L, HttpStatus.CONFLICT);
+
+        webTestClient.put()
+                .uri("/issue/" + first.getId())
+                .exchange()
+                .expectStatus().isOk();
+        Issue returned = webTestClient.get()
+                .uri("/issue/" + first.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Issue.class)
+                .returnResult().getResponseBody();
+        Assertions.assertNotNull(returned);
+        Assertions.assertNotNull(returned.getReturned_at());
+        issue(1L, 3L, HttpStatus.CREATED);
+
+        issueJournal.awaitApplied();
+        Assertions.assertEquals(2, issueRepository.countOpenByReaderId(1L));
+        Assertions.assertTrue(issueRepository.findById(first.getId()).isEmpty());
+        Assertions.assertNotNull(returnedIssueRepository.findById(first.getId()).orElseThrow().getReturned_at());
+    }
+
+    @Test
+    void testSingleAndBulkReturnOfSameIssueReturnOnce() throws Exception {
+        int loans = 50;
+        List<Long> issueIds = new ArrayList<>();
+        for (long i = 1; i <= loans; i++) {
+            readerRepository.save(new Reader(i, "Reader_" + i));
+            bookRepository.save(new Book(i, "Book_" + i));
+            issueIds.add(issue(i, i, HttpStatus.CREATED).getId());
+        }
+        double returnedBefore = meterRegistry.get("returned_books_count").counter().count();
+
+        // одиночный и пакетный возврат одной выдачи наперегонки: вернуть её должен только один из них
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<BulkIssueResult> bulkResults = new ArrayList<>();
+        try {
+            for (Long issueId : issueIds) {
+                CountDownLatch start = new CountDownLatch(1);
+                Future<Issue> single = executor.submit(() -> {
+                    start.await();
+                    return issueService.returnBook(issueId);
+                });
+                Future<List<BulkIssueResult>> bulk = executor.submit(() -> {
+                    start.await();
+                    return issueService.returnAll(List.of(issueId));
+                });
+                start.countDown();
+                single.get(10, TimeUnit.SECONDS);
+                bulkResults.addAll(bulk.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        issueJournal.awaitApplied();
+        Assertions.assertEquals(loans, meterRegistry.get("returned_books_count").counter().count() - returnedBefore);
+        Assertions.assertTrue(bulkResults.stream().allMatch(it -> it.status() == BulkIssueResult.Status.RETURNED
+                || it.status() == BulkIssueResult.Status.ALREADY_RETURNED));
+        Assertions.assertEquals(0, issueRepository.count());
+        Assertions.assertEquals(loans, returnedIssueRepository.count());
+        for (long i = 1; i <= loans; i++) {
+            // книга после возврата снова доступна, а лимит читателя не превышен
+            issue(i, i, HttpStatus.CREATED);
+        }
+    }
+
+    @Test
+    void testRecoveryAppliesJournalAndDropsTornTail() throws Exception {
+        Path path = Files.createTempDirectory(Path.of("target"), "journal-recovery").resolve("issues.journal");
+        LocalDateTime issuedAt = LocalDateTime.of(2024, 5, 1, 10, 0, 0, 123_456_000);
+        ByteBuffer buffer = ByteBuffer.allocate(3 * JournalRecord.SIZE + 5);
+        new JournalRecord(JournalRecord.Type.ISSUED, 101, 1, 1, issuedAt).writeTo(buffer);
+        new JournalRecord(JournalRecord.Type.ISSUED, 102, 2, 1, issuedAt).writeTo(buffer);
+        new JournalRecord(JournalRecord.Type.RETURNED, 101, 1, 1, issuedAt.plusDays(14)).writeTo(buffer);
+        buffer.put(new byte[]{1, 2, 3, 4, 5});
+        Files.write(path, buffer.array());
+
+        IssueJournal recovered = new IssueJournal(jdbcTemplate, transactionTemplate, path, 500, DataSize.ofMegabytes(1));
+        try {
+            recovered.afterSingletonsInstantiated();
+        } finally {
+            recovered.destroy();
+        }
+
+        ReturnedIssue returned = returnedIssueRepository.findById(101L).orElseThrow();
+        Assertions.assertEquals(issuedAt, returned.getIssued_at());
+        Assertions.assertEquals(issuedAt.plusDays(14), returned.getReturned_at());
+        Assertions.assertTrue(issueRepository.findById(101L).isEmpty());
+        Assertions.assertEquals(issuedAt, issueRepository.findById(102L).orElseThrow().getIssued_at());
+        Assertions.assertEquals(0, Files.size(path));
+    }
+
+    @Test
+    void testOpenDeltasFollowPendingRecords() throws Exception {
+        Path path = Files.createTempDirectory(Path.of("target"), "journal-deltas").resolve("issues.journal");
+        IssueJournal journal = new IssueJournal(jdbcTemplate, transactionTemplate, path, 500, DataSize.ofMegabytes(1));
+        journal.afterSingletonsInstantiated();
+        ReadWriteLock applyLock = (ReadWriteLock) ReflectionTestUtils.getField(journal, "applyLock");
+        try {
+            // перенос в БД ждёт, все записи остаются в журнале
+            applyLock.readLock().lock();
+            Issue first = new Issue(401L, 1L, 7L);
+            journal.issued(first);
+            journal.issued(new Issue(402L, 2L, 7L));
+            first.setReturned_at(LocalDateTime.now());
+            journal.returned(first);
+
+            Assertions.assertEquals(1, journal.readerOpenDelta(7L));
+            Assertions.assertEquals(0, journal.bookOpenDelta(1L));
+            Assertions.assertEquals(1, journal.bookOpenDelta(2L));
+            Assertions.assertEquals(0, journal.readerOpenDelta(8L));
+
+            applyLock.readLock().unlock();
+            journal.awaitApplied();
+            Assertions.assertEquals(0, journal.readerOpenDelta(7L));
+            Assertions.assertEquals(0, journal.bookOpenDelta(2L));
+            Assertions.assertEquals(1, issueRepository.countOpenByReaderId(7L));
+        } finally {
+            if (((ReentrantReadWriteLock) applyLock).getReadHoldCount() > 0) {
+                applyLock.readLock().unlock();
+            }
+            journal.destroy();
+        }
+    }
+
+    @Test
+    void testRecoveryAfterRollOver() throws Exception {
+        Path path = Files.createTempDirectory(Path.of("target"), "journal-rollover").resolve("issues.journal");
+        IssueJournal journal = new IssueJournal(jdbcTemplate, transactionTemplate, path, 500,
+                DataSize.ofBytes(2L * JournalRecord.SIZE));
+        journal.afterSingletonsInstantiated();
+        ReadWriteLock applyLock = (ReadWriteLock) ReflectionTestUtils.getField(journal, "applyLock");
+        try {
+            journal.issued(new Issue(201L, 1L, 1L));
+            journal.issued(new Issue(202L, 2L, 1L));
+            journal.awaitApplied();
+            await(() -> Files.size(path), 0);
+            Assertions.assertEquals(0, checkpointOf(path));
+
+            // подтверждённая, но не перенесённая запись после начала журнала заново
+            applyLock.readLock().lock();
+            journal.issued(new Issue(203L, 3L, 1L));
+            recover(path);
+        } finally {
+            if (((ReentrantReadWriteLock) applyLock).getReadHoldCount() > 0) {
+                applyLock.readLock().unlock();
+            }
+            journal.destroy();
+        }
+
+        Assertions.assertTrue(issueRepository.existsById(203L));
+    }
+
+    @Test
+    void testFailedCheckpointKeepsJournalUntruncated() throws Exception {
+        Path path = Files.createTempDirectory(Path.of("target"), "journal-checkpoint").resolve("issues.journal");
+        IssueJournal journal = new IssueJournal(jdbcTemplate, transactionTemplate, path, 500,
+                DataSize.ofBytes(2L * JournalRecord.SIZE));
+        journal.afterSingletonsInstantiated();
+        ReadWriteLock applyLock = (ReadWriteLock) ReflectionTestUtils.getField(journal, "applyLock");
+        try {
+            journal.issued(new Issue(301L, 1L, 1L));
+            // контрольная точка сохраняется уже после подтверждения переноса
+            await(() -> checkpointOf(path), JournalRecord.SIZE);
+            // дальше контрольная точка не сохраняется
+            ((FileChannel) ReflectionTestUtils.getField(journal, "checkpoint")).close();
+            journal.issued(new Issue(302L, 2L, 1L));
+            journal.awaitApplied();
+            // перенос пакета и попытка начать журнал заново - в одном потоке, даём ей завершиться
+            Thread.sleep(200);
+            Assertions.assertEquals(2L * JournalRecord.SIZE, Files.size(path));
+
+            applyLock.readLock().lock();
+            journal.issued(new Issue(303L, 3L, 1L));
+            recover(path);
+        } finally {
+            if (((ReentrantReadWriteLock) applyLock).getReadHoldCount() > 0) {
+                applyLock.readLock().unlock();
+            }
+            journal.destroy();
+        }
+
+        Assertions.assertTrue(issueRepository.existsById(303L));
+    }
+
+    /**
+     * Восстановление другим экземпляром журнала, как после падения процесса
+     */
+    private void recover(Path path) throws Exception {
+        IssueJournal recovered = new IssueJournal(jdbcTemplate, transactionTemplate, path, 500, DataSize.ofMegabytes(1));
+        try {
+            recovered.afterSingletonsInstantiated();
+        } finally {
+            recovered.destroy();
+        }
+    }
+
+    private static long checkpointOf(Path path) throws Exception {
+        return ByteBuffer.wrap(Files.readAllBytes(path.resolveSibling(path.getFileName() + ".checkpoint"))).getLong();
+    }
+
+    private static void await(Callable<Long> actual, long expected) throws Exception {
+        for (int attempt = 0; attempt < 50 && actual.call() != expected; attempt++) {
+            Thread.sleep(20);
+        }
+        Assertions.assertEquals(expected, actual.call());
+    }
+
+    private Issue issue(long readerId, long bookId, HttpStatus status) {
+        IssueRequest request = new IssueRequest();
+        request.setReaderId(readerId);
+        request.setBookId(bookId);
+        return webTestClient.post()
+                .uri("/issue")
+                .bodyValue(request)
+                .exchange()
+                .expectStatus().isEqualTo(status)
+                .expectBody(Issue.class)
+                .returnResult().getResponseBody();
+    }
+}
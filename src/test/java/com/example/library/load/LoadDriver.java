@@ -0,0 +1,231 @@
+package com.example.library.load;
+
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+/**
+ * Нагрузка по замкнутому циклу: каждый из concurrency потоков отправляет следующий запрос только после ответа
+ * на предыдущий, с темпом rate запросов в секунду на всех. Задержка отсчитывается от запланированного момента
+ * отправки, поэтому отставание от графика (coordinated omission) попадает в гистограмму, а не теряется.
+ * <p>
+ * Пропускная способность размеренной фазы не может превысить rate, поэтому после неё идёт фаза без темпа:
+ * потоки отправляют запросы сразу после ответа, и её пропускная способность - максимальная для concurrency потоков
+ */
+class LoadDriver {
+
+    private static final long MAX_LATENCY_US = TimeUnit.MINUTES.toMicros(10);
+
+    /**
+     * @param mix  операции и их веса, например issue:50,book:25,reader:25
+     * @param rate        целевое количество запросов в секунду на все потоки
+     * @param maxDuration длительность фазы без темпа, 0 - не выполнять её
+     */
+    record Settings(Map<String, Integer> mix, int concurrency, Duration warmup, Duration duration, int rate,
+                    Duration maxDuration) {
+
+        static Settings fromSystemProperties() {
+            Map<String, Integer> mix = new LinkedHashMap<>();
+            for (String item : System.getProperty("loadtest.mix", "issue:50,book:25,reader:25").split(",")) {
+                String[] parts = item.trim().split(":");
+                mix.put(parts[0], Integer.parseInt(parts[1]));
+            }
+            return new Settings(mix,
+                    Integer.getInteger("loadtest.concurrency", 8),
+                    Duration.ofSeconds(Integer.getInteger("loadtest.warmup-seconds", 5)),
+                    Duration.ofSeconds(Integer.getInteger("loadtest.duration-seconds", 30)),
+                    Integer.getInteger("loadtest.rate", 100),
+                    Duration.ofSeconds(Integer.getInteger("loadtest.max-duration-seconds", 15)));
+        }
+    }
+
+    /**
+     * Поток нагрузки со своим состоянием (например, своими читателем и книгой)
+     */
+    interface Worker {
+
+        /**
+         * @return true, если запрос выполнен успешно
+         */
+        boolean execute(String operation) throws Exception;
+    }
+
+    /**
+     * Гистограммы задержек в микросекундах: corrected - от запланированного момента, raw - от фактической отправки
+     */
+    static final class Stats {
+
+        final Histogram corrected = new Histogram(MAX_LATENCY_US, 3);
+        final Histogram raw = new Histogram(MAX_LATENCY_US, 3);
+        long errors;
+
+        void add(Stats other) {
+            corrected.add(other.corrected);
+            raw.add(other.raw);
+            errors += other.errors;
+        }
+
+        long requests() {
+            return raw.getTotalCount();
+        }
+    }
+
+    record Result(Duration duration, Stats total, Map<String, Stats> operations) {
+
+        double throughput() {
+            return total.requests() * 1e9 / duration.toNanos();
+        }
+
+        double p99Millis() {
+            return total.corrected.getValueAtPercentile(99) / 1000.0;
+        }
+
+        String report() {
+            StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+                    "%-8s %8s %7s %9s %9s %9s %9s %9s %9s%n",
+                    "op", "requests", "errors", "p50,ms", "p90,ms", "p99,ms", "p99.9,ms", "max,ms", "raw p99"));
+            operations.forEach((name, stats) -> line(report, name, stats));
+            line(report, "total", total);
+            report.append(String.format(Locale.ROOT, "throughput: %.1f req/s", throughput()));
+            return report.toString();
+        }
+
+        private static void line(StringBuilder report, String name, Stats stats) {
+            Histogram h = stats.corrected;
+            report.append(String.format(Locale.ROOT, "%-8s %8d %7d %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    name, stats.requests(), stats.errors,
+                    h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                    h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                    h.getMaxValue() / 1000.0, stats.raw.getValueAtPercentile(99) / 1000.0));
+        }
+    }
+
+    /**
+     * @param paced     размеренная фаза: задержки при темпе rate
+     * @param saturated фаза без темпа: максимальная пропускная способность, null - если не выполнялась
+     */
+    record Runs(Result paced, Result saturated) {
+    }
+
+    private final Settings settings;
+    private final String[] operations;
+    private final int[] cumulativeWeights;
+
+    LoadDriver(Settings settings) {
+        this.settings = settings;
+        this.operations = settings.mix().keySet().toArray(String[]::new);
+        this.cumulativeWeights = new int[operations.length];
+        int sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += settings.mix().get(operations[i]);
+            cumulativeWeights[i] = sum;
+        }
+    }
+
+    /**
+     * Прогрев, замер с темпом rate, затем замер без темпа. Потоки создаются один раз и используются во всех фазах
+     */
+    Runs run(IntFunction<Worker> workerFactory) throws Exception {
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < settings.concurrency(); i++) {
+            workers.add(workerFactory.apply(i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(settings.concurrency());
+        try {
+            long intervalNanos = settings.concurrency() * 1_000_000_000L / settings.rate();
+            phase(executor, workers, settings.warmup(), intervalNanos);
+            Result paced = phase(executor, workers, settings.duration(), intervalNanos);
+            Result saturated = settings.maxDuration().isZero() ? null
+                    : phase(executor, workers, settings.maxDuration(), 0);
+            return new Runs(paced, saturated);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param intervalNanos промежуток между запланированными запросами одного потока, 0 - без темпа
+     */
+    private Result phase(ExecutorService executor, List<Worker> workers, Duration duration, long intervalNanos)
+            throws Exception {
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        List<Future<Map<String, Stats>>> futures = new ArrayList<>();
+        for (int i = 0; i < workers.size(); i++) {
+            Worker worker = workers.get(i);
+            long offset = intervalNanos * i / workers.size();
+            futures.add(executor.submit(() -> loop(worker, start + offset, end, intervalNanos)));
+        }
+
+        Stats total = new Stats();
+        Map<String, Stats> byOperation = new LinkedHashMap<>();
+        for (String operation : operations) {
+            byOperation.put(operation, new Stats());
+        }
+        for (Future<Map<String, Stats>> future : futures) {
+            future.get().forEach((operation, stats) -> {
+                byOperation.get(operation).add(stats);
+                total.add(stats);
+            });
+        }
+        return new Result(Duration.ofNanos(System.nanoTime() - start), total, byOperation);
+    }
+
+    private Map<String, Stats> loop(Worker worker, long firstAt, long end, long intervalNanos) {
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        for (String operation : operations) {
+            stats.put(operation, new Stats());
+        }
+        for (long intended = firstAt; ; intended += intervalNanos) {
+            long now = System.nanoTime();
+            if (intervalNanos == 0) {
+                // без темпа запрос запланирован на момент отправки
+                intended = now;
+            }
+            if (intended >= end) {
+                break;
+            }
+            if (now < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            String operation = nextOperation();
+            Stats operationStats = stats.get(operation);
+            long sent = System.nanoTime();
+            boolean ok;
+            try {
+                ok = worker.execute(operation);
+            } catch (Exception e) {
+                ok = false;
+            }
+            long received = System.nanoTime();
+            if (!ok) {
+                operationStats.errors++;
+            }
+            operationStats.corrected.recordValue(Math.min(MAX_LATENCY_US, (received - intended) / 1000));
+            operationStats.raw.recordValue(Math.min(MAX_LATENCY_US, (received - sent) / 1000));
+        }
+        return stats;
+    }
+
+    private String nextOperation() {
+        int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        throw new IllegalStateException();
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.library.load;
+
+import com.example.library.JUnitSpringBootBase;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Нагрузочный тест /issue, /book и /reader на данных TestDataGenerator. Запускается только явно:
+ * <p>
+ * mvn test -Dtest=LoadTests -Dloadtest=true [-Dloadtest.mix=issue:50,book:25,reader:25 -Dloadtest.concurrency=8
+ * -Dloadtest.rate=100 -Dloadtest.duration-seconds=30 -Dloadtest.max-duration-seconds=15 -Dloadtest.issues=100000]
+ * <p>
+ * Сравнение платформенных и виртуальных потоков при высокой конкурентности - два прогона на JDK 21 с -Pjava21, второй с
+ * -Dspring.profiles.include=virtual, например -Dloadtest.mix=issue:100 -Dloadtest.concurrency=200 -Dloadtest.rate=1000
+ * <p>
+ * Падает, если максимальная пропускная способность (фаза без темпа) или p99 (фаза с темпом rate) хуже базовых
+ * значений из loadtest-baseline.properties больше, чем на допустимую долю. Результат прогона записывается
+ * в target/loadtest-result.properties
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:loadtest",
+        "application.test-data.enabled=true",
+        "application.test-data.issues=${loadtest.issues:100000}",
+        "logging.level.com.example.library.api=warn"})
+class LoadTests extends JUnitSpringBootBase {
+
+    @LocalServerPort
+    int port;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @Test
+    void testThroughputAndLatencyWithinBaseline() throws Exception {
+        long books = jdbcTemplate.queryForObject("select max(id) from books", Long.class);
+        long readers = jdbcTemplate.queryForObject("select max(id) from readers", Long.class);
+        LoadDriver.Settings settings = LoadDriver.Settings.fromSystemProperties();
+
+        LoadDriver.Runs runs = new LoadDriver(settings).run(i -> new HttpWorker(i, books, readers));
+        LoadDriver.Result paced = runs.paced();
+        LoadDriver.Result saturated = runs.saturated();
+        log.info("Нагрузка {}:\n{}", settings, paced.report());
+        Assertions.assertNotNull(saturated, "Фаза без темпа отключена: loadtest.max-duration-seconds=0");
+        log.info("Без темпа:\n{}", saturated.report());
+        saveResult(paced, saturated);
+
+        Properties baseline = new Properties();
+        try (InputStream in = getClass().getResourceAsStream("/loadtest-baseline.properties")) {
+            baseline.load(in);
+        }
+        double tolerance = Double.parseDouble(System.getProperty("loadtest.tolerance", baseline.getProperty("tolerance")));
+        double minThroughput = Double.parseDouble(baseline.getProperty("throughput")) * (1 - tolerance);
+        double maxP99 = Double.parseDouble(baseline.getProperty("p99-ms")) * (1 + tolerance);
+
+        for (LoadDriver.Result result : List.of(paced, saturated)) {
+            Assertions.assertTrue(result.total().errors * 100 <= result.total().requests(),
+                    "Ошибок больше 1%: " + result.total().errors);
+        }
+        Assertions.assertTrue(saturated.throughput() >= minThroughput, String.format(Locale.ROOT,
+                "Максимальная пропускная способность %.1f ниже %.1f", saturated.throughput(), minThroughput));
+        Assertions.assertTrue(paced.p99Millis() <= maxP99,
+                String.format(Locale.ROOT, "p99 %.2f мс выше %.2f мс", paced.p99Millis(), maxP99));
+    }
+
+    private void saveResult(LoadDriver.Result paced, LoadDriver.Result saturated) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("throughput", String.format(Locale.ROOT, "%.1f", saturated.throughput()));
+        properties.setProperty("p99-ms", String.format(Locale.ROOT, "%.2f", paced.p99Millis()));
+        Path file = Path.of("target", "loadtest-result.properties");
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            properties.store(out, "LoadTests: скопировать в src/test/resources/loadtest-baseline.properties для обновления базы");
+        }
+    }
+
+    /**
+     * issue - поочерёдно выдача и возврат своей книги своему читателю; book и reader - чтение случайной записи
+     */
+    private class HttpWorker implements LoadDriver.Worker {
+
+        private final long books;
+        private final long readers;
+        private final String issueBody;
+        private Long openIssueId;
+
+        HttpWorker(int number, long books, long readers) {
+            this.books = books;
+            this.readers = readers;
+            long readerId = create("/reader", "Нагрузочный читатель " + number);
+            long bookId = create("/book", "Нагрузочная книга " + number);
+            this.issueBody = "{\"readerId\":" + readerId + ",\"bookId\":" + bookId + "}";
+        }
+
+        @Override
+        public boolean execute(String operation) throws Exception {
+            return switch (operation) {
+                case "issue" -> openIssueId == null ? issue() : returnBook();
+                case "book" -> get("/book/" + ThreadLocalRandom.current().nextLong(1, books + 1));
+                case "reader" -> get("/reader/" + ThreadLocalRandom.current().nextLong(1, readers + 1));
+                default -> throw new IllegalArgumentException("Неизвестная операция: " + operation);
+            };
+        }
+
+        private boolean issue() throws Exception {
+            HttpResponse<String> response = send(post("/issue", issueBody));
+            if (response.statusCode() != 201) {
+                return false;
+            }
+            openIssueId = objectMapper.readTree(response.body()).get("id").asLong();
+            return true;
+        }
+
+        private boolean returnBook() throws Exception {
+            HttpResponse<String> response = send(request("/issue/" + openIssueId)
+                    .PUT(HttpRequest.BodyPublishers.noBody()).build());
+            // после сбоя выдача могла остаться открытой: возврат повторится, иначе книга потока занята навсегда
+            if (response.statusCode() == 200 || response.statusCode() == 404) {
+                openIssueId = null;
+            }
+            return response.statusCode() == 200;
+        }
+
+        private boolean get(String path) throws Exception {
+            return send(request(path).GET().build()).statusCode() == 200;
+        }
+
+        private long create(String path, String name) {
+            try {
+                HttpResponse<String> response = send(post(path, "{\"name\":\"" + name + "\"}"));
+                return objectMapper.readTree(response.body()).get("id").asLong();
+            } catch (Exception e) {
+                throw new IllegalStateException("Не удалось создать " + name, e);
+            }
+        }
+
+        private HttpRequest post(String path, String body) {
+            return request(path).header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        }
+
+        private HttpRequest.Builder request(String path) {
+            return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path));
+        }
+
+        private HttpResponse<String> send(HttpRequest request) throws Exception {
+            return client.send(request, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+}
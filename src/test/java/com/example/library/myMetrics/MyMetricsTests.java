@@ -0,0 +1,123 @@
+package com.example.library.myMetrics;
+
+import com.example.library.JUnitSpringBootBase;
+import com.example.library.api.IssueRequest;
+import com.example.library.model.Book;
+import com.example.library.model.Issue;
+import com.example.library.model.Reader;
+import com.example.library.repo.IssueRepository;
+import com.example.library.service.IssueEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// своя БД и свой контекст: счётчики и датчики накапливаются за всё время жизни контекста
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:metrics")
+class MyMetricsTests extends JUnitSpringBootBase {
+
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    IssueRepository issueRepository;
+
+    @Value("${application.max-allowed-books}")
+    long booksLimit;
+
+    @Test
+    void testIssuesDenialsAndReturns() {
+        Reader reader = post("/reader", Map.of("name", "Reader_1"), Reader.class);
+        Reader other = post("/reader", Map.of("name", "Reader_2"), Reader.class);
+        Book[] books = new Book[(int) booksLimit + 1];
+        for (int i = 0; i < books.length; i++) {
+            books[i] = post("/book", Map.of("name", "Book_" + i), Book.class);
+        }
+        Issue first = issue(reader, books[0]);
+        for (int i = 1; i < booksLimit; i++) {
+            issue(reader, books[i]);
+        }
+
+        issueExpecting(reader.getId(), books[(int) booksLimit].getId(), HttpStatus.CONFLICT);
+        issueExpecting(other.getId(), books[0].getId(), HttpStatus.CONFLICT);
+        issueExpecting(other.getId(), books[(int) booksLimit].getId() + 1000, HttpStatus.NOT_FOUND);
+        issueExpecting(other.getId() + 1000, books[(int) booksLimit].getId(), HttpStatus.NOT_FOUND);
+
+        Assertions.assertEquals(booksLimit, counter("issued_books_count", "created"));
+        Assertions.assertEquals(1, counter("denied_requests_count", "limit_exceeded"));
+        Assertions.assertEquals(1, counter("denied_requests_count", "book_unavailable"));
+        Assertions.assertEquals(2, counter("denied_requests_count", "not_found"));
+        Assertions.assertEquals(booksLimit, gauge(meterRegistry, "open_loans"));
+        Assertions.assertEquals(1, gauge(meterRegistry, "readers_at_limit"));
+
+        webTestClient.put().uri("/issue/" + first.getId()).exchange().expectStatus().isOk();
+        // повторный возврат не считается
+        webTestClient.put().uri("/issue/" + first.getId()).exchange().expectStatus().isOk();
+
+        Assertions.assertEquals(1, meterRegistry.get("returned_books_count").counter().count());
+        Assertions.assertEquals(booksLimit - 1, gauge(meterRegistry, "open_loans"));
+        Assertions.assertEquals(0, gauge(meterRegistry, "readers_at_limit"));
+    }
+
+    @Test
+    void testGaugesStartFromLoansOpenInDatabase() {
+        // записи в обход сервиса: события не публикуются, живые метрики не меняются
+        issueRepository.saveAll(List.of(
+                new Issue(1001L, 1001L, 1001L, LocalDateTime.now()),
+                new Issue(1002L, 1002L, 1001L, LocalDateTime.now()),
+                new Issue(1003L, 1003L, 1002L, LocalDateTime.now())));
+        try {
+            MeterRegistry registry = new SimpleMeterRegistry();
+            new MyMetrics(registry, issueRepository, Optional.empty(), 2).afterSingletonsInstantiated();
+
+            Assertions.assertEquals(3, gauge(registry, "open_loans"));
+            Assertions.assertEquals(1, gauge(registry, "readers_at_limit"));
+        } finally {
+            issueRepository.deleteAllById(List.of(1001L, 1002L, 1003L));
+        }
+    }
+
+    @Test
+    void testReturnBeforeIssueEventKeepsGauges() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MyMetrics metrics = new MyMetrics(registry, issueRepository, Optional.empty(), 1);
+        Issue issue = new Issue(2001L, 2001L, 2001L, LocalDateTime.now());
+
+        // события публикуются после снятия блокировок, и возврат из другого запроса может опередить выдачу
+        metrics.onIssue(new IssueEvent(IssueEvent.Type.RETURNED, issue));
+        metrics.onIssue(new IssueEvent(IssueEvent.Type.ISSUED, issue));
+
+        Assertions.assertEquals(0, gauge(registry, "open_loans"));
+        Assertions.assertEquals(0, gauge(registry, "readers_at_limit"));
+    }
+
+    private void issueExpecting(long readerId, long bookId, HttpStatus status) {
+        IssueRequest request = new IssueRequest();
+        request.setReaderId(readerId);
+        request.setBookId(bookId);
+        webTestClient.post()
+                .uri("/issue")
+                .bodyValue(request)
+                .exchange()
+                .expectStatus().isEqualTo(status);
+    }
+
+    private double counter(String name, String outcome) {
+        return meterRegistry.get(name).tag("outcome", outcome).counter().count();
+    }
+
+    private static double gauge(MeterRegistry registry, String name) {
+        return registry.get(name).gauge().value();
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.library.overdue;
+
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import com.example.library.JUnitSpringBootBase;
+import com.example.library.model.Book;
+import com.example.library.model.Issue;
+import com.example.library.model.OverdueLoan;
+import com.example.library.model.Reader;
+import com.example.library.service.IssueEvent;
+
+
+// своя БД и свой контекст: тест продвигает колесо таймеров на две недели вперёд
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:overdue",
+        "application.overdue.loan-period=14d"})
+class OverdueDetectorTests extends JUnitSpringBootBase {
+
+    @Autowired
+    WebTestClient webTestClient;
+    @Autowired
+    OverdueDetector overdueDetector;
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    void testReportsOnlyNewlyOverdueOpenLoans() {
+        Reader first = post("/reader", Map.of("name", "Reader_1"), Reader.class);
+        Reader second = post("/reader", Map.of("name", "Reader_2"), Reader.class);
+        Issue kept = issue(first, post("/book", Map.of("name", "Book_1"), Book.class));
+        Issue returned = issue(first, post("/book", Map.of("name", "Book_2"), Book.class));
+        Issue late = issue(second, post("/book", Map.of("name", "Book_3"), Book.class));
+        webTestClient.put().uri("/issue/" + returned.getId()).exchange().expectStatus().isOk();
+
+        LocalDateTime now = LocalDateTime.now();
+        Assertions.assertEquals(List.of(), overdueDetector.advance(now.plusDays(13)));
+        Assertions.assertEquals(List.of(kept.getId(), late.getId()), overdueDetector.advance(now.plusDays(15)).stream()
+                .map(OverdueLoan::getId).sorted().toList());
+        Assertions.assertEquals(List.of(), overdueDetector.advance(now.plusDays(16)));
+
+        List<OverdueLoan> firstPage = webTestClient.get()
+                .uri("/issue/overdue?limit=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("X-Next-Cursor", String.valueOf(kept.getId()))
+                .expectBody(new ParameterizedTypeReference<List<OverdueLoan>>() {
+                })
+                .returnResult().getResponseBody();
+        Assertions.assertEquals(1, firstPage.size());
+        Assertions.assertEquals(kept.getId(), firstPage.get(0).getId());
+        Assertions.assertEquals(kept.getIssued_at().plusDays(14), firstPage.get(0).getDue_at());
+
+        webTestClient.put().uri("/issue/" + late.getId()).exchange().expectStatus().isOk();
+        List<OverdueLoan> rest = webTestClient.get()
+                .uri("/issue/overdue?after=" + kept.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist("X-Next-Cursor")
+                .expectBody(new ParameterizedTypeReference<List<OverdueLoan>>() {
+                })
+                .returnResult().getResponseBody();
+        Assertions.assertEquals(List.of(), rest);
+        Assertions.assertEquals(1, meterRegistry.get("overdue_loans").gauge().value());
+    }
+
+    @Test
+    void testReturnBeforeIssueEventIsNotReportedOverdue() {
+        Issue issue = new Issue(9001L, 9001L, 9001L, LocalDateTime.now().minusDays(30));
+        Issue returned = new Issue(9001L, 9001L, 9001L, issue.getIssued_at());
+        returned.setReturned_at(LocalDateTime.now());
+
+        // события публикуются после снятия блокировок, и возврат из другого запроса может опередить выдачу
+        overdueDetector.onIssue(new IssueEvent(IssueEvent.Type.RETURNED, returned));
+        overdueDetector.onIssue(new IssueEvent(IssueEvent.Type.ISSUED, issue));
+
+        // срок выдачи давно прошёл: будь она в колесе, стала бы просроченной на ближайшем шаге
+        Assertions.assertTrue(overdueDetector.advance(LocalDateTime.now()).stream()
+                .noneMatch(loan -> loan.getId() == issue.getId()));
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.library.service;
+
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
+import com.example.library.JUnitSpringBootBase;
+import com.example.library.api.IssueRequest;
+import com.example.library.model.Book;
+import com.example.library.model.Reader;
+import com.example.library.repo.BookRepository;
+import com.example.library.repo.IssueRepository;
+import com.example.library.repo.ReaderRepository;
+import com.example.library.repo.ReturnedIssueRepository;
+
+
+class IssueServiceConcurrencyTests extends JUnitSpringBootBase {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    IssueService issueService;
+    @Autowired
+    IssueRepository issueRepository;
+    @Autowired
+    ReturnedIssueRepository returnedIssueRepository;
+    @Autowired
+    BookRepository bookRepository;
+    @Autowired
+    ReaderRepository readerRepository;
+
+    @Value("${application.max-allowed-books}")
+    long booksLimit;
+
+    @BeforeEach
+    void clean() {
+        bookRepository.deleteAll();
+        readerRepository.deleteAll();
+        issueRepository.deleteAll();
+        returnedIssueRepository.deleteAll();
+    }
+
+    @Test
+    void testParallelIssuesRespectReaderLimit() throws Exception {
+        readerRepository.save(new Reader(1L, "Reader_1"));
+        for (long i = 1; i <= THREADS; i++) {
+            bookRepository.save(new Book(i, "Book_" + i));
+        }
+
+        long issued = issueInParallel(i -> request(1L, i));
+
+        Assertions.assertEquals(booksLimit, issued);
+        Assertions.assertEquals(booksLimit, issueRepository.countOpenByReaderId(1L));
+    }
+
+    @Test
+    void testParallelIssuesOfSameBook() throws Exception {
+        bookRepository.save(new Book(1L, "Book_1"));
+        for (long i = 1; i <= THREADS; i++) {
+            readerRepository.save(new Reader(i, "Reader_" + i));
+        }
+
+        long issued = issueInParallel(i -> request(i, 1L));
+
+        Assertions.assertEquals(1, issued);
+        Assertions.assertEquals(1, issueRepository.count());
+    }
+
+    private long issueInParallel(LongFunction<IssueRequest> requests) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (long i = 1; i <= THREADS; i++) {
+                IssueRequest request = requests.apply(i);
+                Callable<Boolean> task = () -> {
+                    start.await();
+                    try {
+                        issueService.issue(request);
+                        return true;
+                    } catch (RuntimeException e) {
+                        return false;
+                    }
+                };
+                results.add(executor.submit(task));
+            }
+            start.countDown();
+            long issued = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get()) {
+                    issued++;
+                }
+            }
+            return issued;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static IssueRequest request(long readerId, long bookId) {
+        IssueRequest request = new IssueRequest();
+        request.setReaderId(readerId);
+        request.setBookId(bookId);
+        return request;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.library.service;
+
+import com.example.library.JUnitSpringBootBase;
+import com.example.library.model.Book;
+import com.example.library.model.Issue;
+import com.example.library.model.Reader;
+import com.example.library.repo.BookRepository;
+import com.example.library.repo.IssueRepository;
+import com.example.library.repo.ReaderRepository;
+import com.example.library.repo.ReturnedIssueRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Открытые выдачи и история читаются разными запросами. Возврат, завершившийся между ними, не должен
+ * показывать выдачу дважды
+ */
+// своя БД и свой контекст: IssueRepository подменён шпионом
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:snapshot")
+class IssueServiceSnapshotTests extends JUnitSpringBootBase {
+
+    @Autowired
+    IssueService issueService;
+    @SpyBean
+    IssueRepository issueRepository;
+    @Autowired
+    ReturnedIssueRepository returnedIssueRepository;
+    @Autowired
+    BookRepository bookRepository;
+    @Autowired
+    ReaderRepository readerRepository;
+
+    @BeforeEach
+    void clean() {
+        bookRepository.deleteAll();
+        readerRepository.deleteAll();
+        issueRepository.deleteAll();
+        returnedIssueRepository.deleteAll();
+    }
+
+    @Test
+    void testReturnBetweenReadsOfShowIssues() {
+        Issue issue = newIssue();
+        Mockito.doAnswer(returnAfterRead(issue.getId())).when(issueRepository)
+                .findByIdGreaterThanOrderByIdAsc(ArgumentMatchers.anyLong(), ArgumentMatchers.any());
+
+        assertReturnedOnce(issue, issueService.showIssues(issue.getId() - 1, null).items());
+    }
+
+    @Test
+    void testReturnBetweenReadsOfReaderIssues() {
+        Issue issue = newIssue();
+        Mockito.doAnswer(returnAfterRead(issue.getId())).when(issueRepository)
+                .findReaderIssuesBefore(ArgumentMatchers.anyLong(), ArgumentMatchers.anyLong(), ArgumentMatchers.any());
+
+        assertReturnedOnce(issue, issueService.getReaderIssues(issue.getReaderId(), null, null).items());
+    }
+
+    @Test
+    void testReturnBetweenReadsOfExport() {
+        Issue issue = newIssue();
+        Mockito.doAnswer(returnAfterRead(issue.getId())).when(issueRepository).streamAll();
+        List<Issue> exported = new ArrayList<>();
+
+        issueService.exportAllIssues(exported::add);
+
+        // выгрузка читает один снимок: выдача в нём либо открыта, либо возвращена, но не то и другое сразу
+        Assertions.assertEquals(List.of(issue.getId()), exported.stream().map(Issue::getId).toList());
+    }
+
+    private Issue newIssue() {
+        Reader reader = post("/reader", Map.of("name", "Reader"), Reader.class);
+        Book book = post("/book", Map.of("name", "Book"), Book.class);
+        return issue(reader, book);
+    }
+
+    /**
+     * Читает открытые выдачи, после чего выдачу возвращает другой клиент - до чтения истории
+     */
+    private Answer<?> returnAfterRead(long issueId) {
+        Answer<?> real = Mockito.mockingDetails(issueRepository).getMockCreationSettings().getDefaultAnswer();
+        return invocation -> {
+            Object rows = real.answer(invocation);
+            CompletableFuture.runAsync(() -> issueService.returnBook(issueId)).join();
+            return rows;
+        };
+    }
+
+    private static void assertReturnedOnce(Issue issue, List<Issue> issues) {
+        Assertions.assertEquals(List.of(issue.getId()), issues.stream().map(Issue::getId).toList());
+        Assertions.assertNotNull(issues.get(0).getReturned_at());
+    }
+}